@@ -1,5 +1,6 @@
 package ru.practicum.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.*;
 import lombok.*;
 
@@ -28,5 +29,8 @@ public class EventFullDto {
     private String state;
     private String title;
     private Long views;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean viewsApproximate;
 }
 
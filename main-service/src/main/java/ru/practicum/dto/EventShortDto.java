@@ -1,5 +1,6 @@
 package ru.practicum.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
@@ -30,4 +31,7 @@ public class EventShortDto {
     @NotBlank
     private String title;
     private Long views;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean viewsApproximate;
 }
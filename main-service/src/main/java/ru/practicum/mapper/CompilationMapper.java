@@ -5,6 +5,9 @@ import org.springframework.stereotype.Component;
 import ru.practicum.dto.CompilationDto;
 import ru.practicum.dto.EventShortDto;
 import ru.practicum.model.Compilation;
+import ru.practicum.model.Event;
+import ru.practicum.service.EventStatisticsService;
+import ru.practicum.service.EventStatisticsService.ViewCounts;
 
 import java.util.Collections;
 import java.util.List;
@@ -14,17 +17,22 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CompilationMapper {
     private final EventMapper eventMapper;
+    private final EventStatisticsService eventStatsService;
 
     public CompilationDto toCompilationDto(Compilation compilation) {
         if (compilation == null) {
             return null;
         }
 
-        List<EventShortDto> eventDtos = compilation.getEvents() != null ?
-                compilation.getEvents().stream()
-                        .map(eventMapper::toEventShortDto)
-                        .collect(Collectors.toList()) :
-                Collections.emptyList();
+        List<EventShortDto> eventDtos = Collections.emptyList();
+        if (compilation.getEvents() != null && !compilation.getEvents().isEmpty()) {
+            ViewCounts views = eventStatsService.getViewsCounts(compilation.getEvents().stream()
+                    .map(Event::getId)
+                    .collect(Collectors.toList()));
+            eventDtos = compilation.getEvents().stream()
+                    .map(event -> eventMapper.toEventShortDto(event, views))
+                    .collect(Collectors.toList());
+        }
 
         return CompilationDto.builder()
                 .id(compilation.getId())
@@ -6,8 +6,10 @@ import org.springframework.stereotype.Component;
 import ru.practicum.dto.*;
 import ru.practicum.model.Event;
 import ru.practicum.service.EventStatisticsService;
+import ru.practicum.service.EventStatisticsService.ViewCounts;
 
 
+import java.util.List;
 import java.util.Objects;
 
 @Component
@@ -22,6 +24,16 @@ public class EventMapper {
         if (event == null) {
             throw new IllegalArgumentException("Event cannot be null");
         }
+        return toEventShortDto(event, eventStatsService.getViewsCounts(List.of(event.getId())));
+    }
+
+    /**
+     * Uses view counts the caller has already read, e.g. for a whole page of events at once.
+     */
+    public EventShortDto toEventShortDto(Event event, ViewCounts views) {
+        if (event == null) {
+            throw new IllegalArgumentException("Event cannot be null");
+        }
 
         return EventShortDto.builder()
                 .id(event.getId())
@@ -32,11 +44,17 @@ public class EventMapper {
                 .initiator(userMapper.toUserShortDto(event.getInitiator()))
                 .paid(event.getPaid())
                 .title(event.getTitle())
-                .views(eventStatsService.getViewsCount(event.getId()))
+                .views(views.get(event.getId()))
+                .viewsApproximate(views.viewsApproximate(event.getId()))
                 .build();
     }
 
     public EventFullDto toEventFullDto(Event event) {
+        Objects.requireNonNull(event, "Event cannot be null");
+        return toEventFullDto(event, eventStatsService.getViewsCounts(List.of(event.getId())));
+    }
+
+    public EventFullDto toEventFullDto(Event event, ViewCounts views) {
         Objects.requireNonNull(event, "Event cannot be null");
         LocationDto locationDto = LocationDto.builder()
                 .lat(event.getLocation().getLat())
@@ -57,7 +75,8 @@ public class EventMapper {
                 .requestModeration(event.getRequestModeration())
                 .state(event.getState().name())
                 .title(event.getTitle())
-                .views(eventStatsService.getViewsCount(event.getId()));
+                .views(views.get(event.getId()))
+                .viewsApproximate(views.viewsApproximate(event.getId()));
 
         if (event.getCreatedOn() != null) {
             builder.createdOn(event.getCreatedOn());
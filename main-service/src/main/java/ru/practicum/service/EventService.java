@@ -19,13 +19,15 @@ import ru.practicum.mapper.RequestMapper;
 import ru.practicum.mapper.LocationMapper;
 import ru.practicum.model.*;
 import ru.practicum.repository.*;
-import ru.practicum.statsclient.StatsClient;
+import ru.practicum.service.EventStatisticsService.ViewCounts;
+import ru.practicum.statsclient.HitBatcher;
 
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static ru.practicum.model.EventState.*;
@@ -43,7 +45,8 @@ public class EventService {
     private final ParticipationRequestRepository requestRepository;
     private final EventMapper eventMapper;
     private final RequestMapper requestMapper;
-    private final StatsClient statsClient;
+    private final EventStatisticsService eventStatsService;
+    private final HitBatcher hitBatcher;
     private final LocationService locationService;
     private final LocationMapper locationMapper;
 
@@ -80,8 +83,10 @@ public class EventService {
             spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("eventDate"), rangeEnd));
         }
 
-        return eventRepository.findAll(spec, pageable).stream()
-                .map(eventMapper::toEventFullDto)
+        List<Event> events = eventRepository.findAll(spec, pageable).getContent();
+        ViewCounts views = eventStatsService.getViewsCounts(events.stream().map(Event::getId).toList());
+        return events.stream()
+                .map(event -> eventMapper.toEventFullDto(event, views))
                 .collect(Collectors.toList());
     }
 
@@ -175,8 +180,10 @@ public class EventService {
                 .orElseThrow(() -> new NotFoundException("User with id=" + userId + " was not found"));
 
         Pageable pageable = PageRequest.of(from / size, size);
-        return eventRepository.findAllByInitiatorId(userId, pageable).stream()
-                .map(eventMapper::toEventShortDto)
+        List<Event> events = eventRepository.findAllByInitiatorId(userId, pageable);
+        ViewCounts views = eventStatsService.getViewsCounts(events.stream().map(Event::getId).toList());
+        return events.stream()
+                .map(event -> eventMapper.toEventShortDto(event, views))
                 .collect(Collectors.toList());
     }
 
@@ -279,13 +286,9 @@ public class EventService {
         Event event = eventRepository.findByIdAndState(id, PUBLISHED)
                 .orElseThrow(() -> new NotFoundException("Event with id=" + id + " was not found"));
 
-        sendHitToStatsService("/events/" + id, request.getRemoteAddr());
-
-        Long views = getEventViews(id);
-        EventFullDto dto = eventMapper.toEventFullDto(event);
-        dto.setViews(views);
-
-        return dto;
+        // The views are read once this request's own hit was sent, as before hits were batched
+        CompletableFuture<Void> hitSent = sendHitAndFlush("/events/" + id, request.getRemoteAddr());
+        return eventMapper.toEventFullDto(event, eventStatsService.readViewsAfterHit(id, hitSent).join());
     }
 
     @Transactional(readOnly = true)
@@ -388,70 +391,40 @@ public class EventService {
                         ConfirmedRequestsDto::getCount
                 ));
 
-        Map<Long, Long> views = getEventsViews(eventIds);
+        ViewCounts views = eventStatsService.getViewsCounts(eventIds);
 
         return events.stream()
                 .map(event -> {
-                    EventShortDto dto = eventMapper.toEventShortDto(event);
+                    EventShortDto dto = eventMapper.toEventShortDto(event, views);
                     dto.setConfirmedRequests(confirmedRequests.getOrDefault(event.getId(), 0L));
-                    dto.setViews(views.getOrDefault(event.getId(), 0L));
                     return dto;
                 })
                 .collect(Collectors.toList());
     }
 
-    @Transactional(readOnly = true)
-    private Map<Long, Long> getEventsViews(List<Long> eventIds) {
-        List<String> uris = eventIds.stream()
-                .map(id -> "/events/" + id)
-                .collect(Collectors.toList());
-
-        List<ViewStats> stats = statsClient.getStats(
-                LocalDateTime.now().minusYears(1),
-                LocalDateTime.now(),
-                uris,
-                true
-        );
-
-        return stats.stream()
-                .collect(Collectors.toMap(
-                        stat -> Long.parseLong(stat.getUri().substring("/events/".length())),
-                        ViewStats::getHits
-                ));
+    /**
+     * Queues the hit for the next batch sent to stats-server, so the request never waits on it.
+     */
+    private void sendHitToStatsService(String uri, String ip) {
+        if (!hitBatcher.submit(newHit(uri, ip))) {
+            log.debug("Stats hit queue is full, dropped hit for URI: {}", uri);
+        }
     }
 
-    @Transactional(readOnly = true)
-    private long getEventViews(Long eventId) {
-        List<ViewStats> stats = statsClient.getStats(
-                LocalDateTime.now().minusYears(1),
-                LocalDateTime.now(),
-                List.of("/events/" + eventId),
-                true
-        );
-        return stats.isEmpty() ? 0 : stats.get(0).getHits();
+    /**
+     * Has the hit sent at once; the returned future completes when it was, for a caller reading its own hit.
+     */
+    private CompletableFuture<Void> sendHitAndFlush(String uri, String ip) {
+        return hitBatcher.submitAndFlush(newHit(uri, ip));
     }
 
-    @Transactional
-    private void sendHitToStatsService(String uri, String ip) {
-        EndpointHit hit = EndpointHit.builder()
+    private EndpointHit newHit(String uri, String ip) {
+        return EndpointHit.builder()
                 .app("ewm-main-service")
                 .uri(uri)
                 .ip(ip)
                 .timestamp(LocalDateTime.now())
                 .build();
-
-        try {
-            statsClient.hit(hit);
-            log.debug("Hit successfully sent for URI: {}", uri);
-
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        } catch (Exception e) {
-            log.error("Failed to send hit for URI: {}. Error: {}", uri, e.getMessage());
-        }
     }
 
     @Transactional
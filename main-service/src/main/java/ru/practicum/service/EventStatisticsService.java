@@ -1,26 +1,91 @@
 package ru.practicum.service;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.dto.ConfirmedRequestsDto;
 import ru.practicum.dto.ViewStats;
 import ru.practicum.model.RequestStatus;
 import ru.practicum.repository.ParticipationRequestRepository;
+import ru.practicum.statsclient.AsyncStatsClient;
 import ru.practicum.statsclient.StatsClient;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
+/**
+ * View counts are read with a deadline of {@code stats-server.views.deadline-ms}. The first request goes through
+ * the caching {@link StatsClient}; if it has not answered after {@code hedge-delay-ms}, a second one goes straight
+ * to stats-server and the first answer wins. When neither answers in time, the last counts seen for the events
+ * are returned, marked approximate, and for the next {@code stale-window-ms} those events are answered that way
+ * without waiting, so a page mapping them pays the deadline once. Other events, and events with no counts seen
+ * yet, are still read live.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class EventStatisticsService {
+    private static final ViewCounts NO_VIEWS = new ViewCounts(Map.of(), Set.of());
+
     private final ParticipationRequestRepository requestRepository;
     private final StatsClient statsClient;
+    private final AsyncStatsClient asyncStatsClient;
+    private final long deadlineMillis;
+    private final long hedgeDelayMillis;
+    private final long staleWindowNanos;
+    private final int staleMaxEntries;
+    private final Map<Long, Long> lastViews = new ConcurrentHashMap<>();
+    private final ExecutorService viewsExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, Long> staleUntilNanos = new ConcurrentHashMap<>();
+
+    public EventStatisticsService(ParticipationRequestRepository requestRepository,
+                                  StatsClient statsClient,
+                                  AsyncStatsClient asyncStatsClient,
+                                  @Value("${stats-server.views.deadline-ms:500}") long deadlineMillis,
+                                  @Value("${stats-server.views.hedge-delay-ms:150}") long hedgeDelayMillis,
+                                  @Value("${stats-server.views.stale-window-ms:1000}") long staleWindowMillis,
+                                  @Value("${stats-server.views.stale-max-entries:100000}") int staleMaxEntries) {
+        this.requestRepository = requestRepository;
+        this.statsClient = statsClient;
+        this.asyncStatsClient = asyncStatsClient;
+        this.deadlineMillis = deadlineMillis;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.staleWindowNanos = TimeUnit.MILLISECONDS.toNanos(staleWindowMillis);
+        this.staleMaxEntries = staleMaxEntries;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ViewCounts {
+        private final Map<Long, Long> counts;
+        private final Set<Long> approximateIds;
+
+        public long get(Long eventId) {
+            return counts.getOrDefault(eventId, 0L);
+        }
+
+        /**
+         * The DTO's {@code viewsApproximate}: {@code true}, or {@code null} so the field is left out.
+         */
+        public Boolean viewsApproximate(Long eventId) {
+            return approximateIds.contains(eventId) ? Boolean.TRUE : null;
+        }
+    }
 
     @Transactional(readOnly = true)
     public Long getConfirmedRequestsCount(Long eventId) {
@@ -46,34 +111,133 @@ public class EventStatisticsService {
                 ));
     }
 
-    @Transactional(readOnly = true)
-    public Long getViewsCount(Long eventId) {
-        try {
-            LocalDateTime start = LocalDateTime.now().minusYears(1);
-            LocalDateTime end = LocalDateTime.now();
-            String uri = "/events/" + eventId;
+    public ViewCounts getViewsCounts(List<Long> eventIds) {
+        return readViews(eventIds).join();
+    }
 
-            List<ViewStats> stats = statsClient.getStats(start, end, List.of(uri), true);
-            return stats.isEmpty() ? 0L : stats.get(0).getHits();
-        } catch (Exception e) {
-            log.error("Failed to get views for event {}", eventId, e);
-            return 0L;
+    /**
+     * Completes within the deadline and never exceptionally.
+     */
+    public CompletableFuture<ViewCounts> readViews(List<Long> eventIds) {
+        return readViews(eventIds, false);
+    }
+
+    /**
+     * Views of one event once {@code hitSent} completes, or after the deadline if it does not, read past the
+     * views cache so that they include the caller's own hit.
+     */
+    public CompletableFuture<ViewCounts> readViewsAfterHit(Long eventId, CompletableFuture<Void> hitSent) {
+        return hitSent.completeOnTimeout(null, deadlineMillis, TimeUnit.MILLISECONDS)
+                .thenCompose(ignored -> readViews(List.of(eventId), true));
+    }
+
+    private CompletableFuture<ViewCounts> readViews(List<Long> eventIds, boolean uncached) {
+        long now = System.nanoTime();
+        List<Long> stale = new ArrayList<>();
+        List<Long> live = new ArrayList<>();
+        for (Long id : eventIds) {
+            Long staleUntil = staleUntilNanos.get(id);
+            if (staleUntil != null && now - staleUntil < 0 && lastViews.containsKey(id)) {
+                stale.add(id);
+            } else {
+                live.add(id);
+            }
         }
+        if (live.isEmpty()) {
+            return CompletableFuture.completedFuture(staleViews(stale, NO_VIEWS));
+        }
+        return readLiveViews(live, uncached).thenApply(views -> staleViews(stale, views));
     }
 
-    @Transactional(readOnly = true)
-    public Map<Long, Long> getViewsCounts(List<Long> eventIds) {
+    private CompletableFuture<ViewCounts> readLiveViews(List<Long> eventIds, boolean uncached) {
         LocalDateTime start = LocalDateTime.now().minusYears(1);
         LocalDateTime end = LocalDateTime.now();
         List<String> uris = eventIds.stream()
                 .map(id -> "/events/" + id)
                 .collect(Collectors.toList());
 
-        return statsClient.getStats(start, end, uris, true)
-                .stream()
+        CompletableFuture<Map<Long, Long>> fresh = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<Map<Long, Long>, Throwable> settle = (views, error) -> {
+            if (error == null) {
+                fresh.complete(views);
+            } else if (failures.incrementAndGet() == 2) {
+                fresh.completeExceptionally(error);
+            }
+        };
+        CompletableFuture<Map<Long, Long>> first = uncached
+                ? asyncStatsClient.getStatsAsync(start, end, uris, true).thenApply(this::toViews)
+                : CompletableFuture.supplyAsync(() -> toViews(statsClient.getStats(start, end, uris, true)),
+                viewsExecutor);
+        first.whenComplete(settle);
+        CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> {
+                    if (fresh.isDone()) {
+                        return fresh;
+                    }
+                    log.debug("Views read for {} events is slow, hedging", eventIds.size());
+                    return asyncStatsClient.getStatsAsync(start, end, uris, true).thenApply(this::toViews);
+                })
+                .whenComplete(settle);
+        // Late answers still refresh the stale cache
+        fresh.thenAccept(views -> remember(eventIds, views));
+
+        return fresh.thenApply(views -> new ViewCounts(views, Set.of()))
+                .completeOnTimeout(null, deadlineMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    log.warn("Failed to get views for {} events: {}", eventIds.size(), error.getMessage());
+                    return null;
+                })
+                .thenApply(counts -> {
+                    if (counts != null) {
+                        return counts;
+                    }
+                    markStale(eventIds);
+                    return staleViews(eventIds, NO_VIEWS);
+                });
+    }
+
+    private Map<Long, Long> toViews(List<ViewStats> stats) {
+        return stats.stream()
                 .collect(Collectors.toMap(
                         stat -> Long.parseLong(stat.getUri().substring("/events/".length())),
-                        ViewStats::getHits
+                        ViewStats::getHits,
+                        Long::sum
                 ));
     }
+
+    private void remember(List<Long> eventIds, Map<Long, Long> views) {
+        if (lastViews.size() + eventIds.size() > staleMaxEntries) {
+            lastViews.clear();
+        }
+        eventIds.forEach(id -> lastViews.put(id, views.getOrDefault(id, 0L)));
+    }
+
+    private void markStale(List<Long> eventIds) {
+        if (staleUntilNanos.size() + eventIds.size() > staleMaxEntries) {
+            staleUntilNanos.clear();
+        }
+        long staleUntil = System.nanoTime() + staleWindowNanos;
+        eventIds.forEach(id -> staleUntilNanos.put(id, staleUntil));
+    }
+
+    /**
+     * Adds the last counts seen for {@code eventIds}, marked approximate, to {@code live}.
+     */
+    private ViewCounts staleViews(List<Long> eventIds, ViewCounts live) {
+        if (eventIds.isEmpty()) {
+            return live;
+        }
+        Map<Long, Long> views = new HashMap<>(live.getCounts());
+        Set<Long> approximateIds = new HashSet<>(live.getApproximateIds());
+        eventIds.forEach(id -> {
+            Long known = lastViews.get(id);
+            if (known != null) {
+                views.put(id, known);
+            }
+            approximateIds.add(id);
+        });
+        return new ViewCounts(views, approximateIds);
+    }
 }
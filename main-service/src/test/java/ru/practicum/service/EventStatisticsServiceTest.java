@@ -0,0 +1,137 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.repository.ParticipationRequestRepository;
+import ru.practicum.statsclient.AsyncStatsClient;
+import ru.practicum.statsclient.StatsClient;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventStatisticsServiceTest {
+    private static final long DEADLINE_MILLIS = 200;
+    private static final long HEDGE_DELAY_MILLIS = 50;
+
+    private final StatsClient statsClient = mock(StatsClient.class);
+    private final AsyncStatsClient asyncStatsClient = mock(AsyncStatsClient.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final EventStatisticsService service = new EventStatisticsService(
+            mock(ParticipationRequestRepository.class), statsClient, asyncStatsClient,
+            DEADLINE_MILLIS, HEDGE_DELAY_MILLIS, 10_000, 1000);
+
+    @AfterEach
+    void releaseStatsClient() {
+        release.countDown();
+    }
+
+    @Test
+    void fastAnswerIsNotHedged() {
+        when(statsClient.getStats(any(), any(), anyList(), anyBoolean())).thenReturn(List.of(views(1, 5)));
+
+        EventStatisticsService.ViewCounts counts = service.getViewsCounts(List.of(1L, 2L));
+
+        assertEquals(5, counts.get(1L));
+        assertEquals(0, counts.get(2L));
+        assertTrue(counts.getApproximateIds().isEmpty());
+        verify(asyncStatsClient, after(2 * HEDGE_DELAY_MILLIS).never())
+                .getStatsAsync(any(), any(), anyList(), anyBoolean());
+    }
+
+    @Test
+    void slowAnswerIsHedgedAndTheFirstAnswerWins() {
+        blockStatsClient();
+        when(asyncStatsClient.getStatsAsync(any(), any(), anyList(), anyBoolean()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(views(1, 7))));
+
+        long started = System.nanoTime();
+        EventStatisticsService.ViewCounts counts = service.getViewsCounts(List.of(1L));
+
+        assertEquals(7, counts.get(1L));
+        assertNull(counts.viewsApproximate(1L));
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS));
+    }
+
+    @Test
+    void missedDeadlineFallsBackToTheLastCountsAndStaysStaleForTheWindow() {
+        when(statsClient.getStats(any(), any(), anyList(), anyBoolean()))
+                .thenReturn(List.of(views(1, 5)))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of(views(1, 9));
+                });
+        when(asyncStatsClient.getStatsAsync(any(), any(), anyList(), anyBoolean()))
+                .thenReturn(new CompletableFuture<>());
+        service.getViewsCounts(List.of(1L));
+
+        long started = System.nanoTime();
+        EventStatisticsService.ViewCounts late = service.getViewsCounts(List.of(1L, 2L));
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS));
+        assertEquals(5, late.get(1L));
+        assertEquals(0, late.get(2L));
+        assertEquals(Boolean.TRUE, late.viewsApproximate(1L));
+        assertEquals(Boolean.TRUE, late.viewsApproximate(2L));
+
+        // Within the stale window the event is answered at once without another request
+        EventStatisticsService.ViewCounts stale = service.getViewsCounts(List.of(1L));
+        assertEquals(5, stale.get(1L));
+        assertEquals(Boolean.TRUE, stale.viewsApproximate(1L));
+        verify(statsClient, times(2)).getStats(any(), any(), anyList(), anyBoolean());
+    }
+
+    @Test
+    void failuresOfBothRequestsFallBackWithoutWaitingForTheDeadline() {
+        when(statsClient.getStats(any(), any(), anyList(), anyBoolean()))
+                .thenThrow(new IllegalStateException("stats-server is down"));
+        when(asyncStatsClient.getStatsAsync(any(), any(), anyList(), anyBoolean()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("stats-server is down")));
+
+        EventStatisticsService.ViewCounts counts = service.getViewsCounts(List.of(1L));
+
+        assertEquals(0, counts.get(1L));
+        assertEquals(Boolean.TRUE, counts.viewsApproximate(1L));
+    }
+
+    @Test
+    void viewsAfterHitWaitForTheHitAndSkipTheViewsCache() {
+        CompletableFuture<Void> hitSent = new CompletableFuture<>();
+        when(asyncStatsClient.getStatsAsync(any(), any(), anyList(), anyBoolean()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(views(1, 4))));
+
+        CompletableFuture<EventStatisticsService.ViewCounts> counts = service.readViewsAfterHit(1L, hitSent);
+
+        assertFalse(counts.isDone());
+        hitSent.complete(null);
+        assertEquals(4, counts.join().get(1L));
+        verify(statsClient, never()).getStats(any(), any(), anyList(), anyBoolean());
+    }
+
+    private void blockStatsClient() {
+        when(statsClient.getStats(any(), any(), anyList(), anyBoolean())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+    }
+
+    private static ViewStats views(long eventId, long hits) {
+        return new ViewStats("ewm-main-service", "/events/" + eventId, hits);
+    }
+}
@@ -0,0 +1,219 @@
+package ru.practicum.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.wire.HitCodec;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a synthetic hit stream against a running stats-server and reports, every report interval, the
+ * accepted hit rate and the latency of {@code /hit/batch} and of {@code /stats} queries issued alongside it.
+ * <p>
+ * Start PostgreSQL and stats-server (e.g. {@code docker compose up stats-db stats-server}), then run
+ * <pre>
+ * java -cp stats/stats-bench/target/benchmarks.jar ru.practicum.bench.LoadGenerator --rate=5000 --duration=300
+ * </pre>
+ * Options, all {@code --name=value}: {@code url}, {@code rate} (hits/s), {@code batch}, {@code uris} and
+ * {@code ips} (cardinalities), {@code history-days} (spread of hit timestamps, so history grows as it runs),
+ * {@code duration} and {@code report} (seconds), {@code concurrency} (requests in flight), {@code format}
+ * ({@code json} or {@code binary}), {@code query-rate} (/stats requests per second) and {@code query-days}
+ * (range of each /stats request).
+ * <p>
+ * Hits are sent open-loop on a fixed schedule: a batch that cannot start because {@code concurrency} requests
+ * are still in flight is counted as skipped instead of delaying the schedule, so a slow server shows up as lost
+ * throughput rather than as hidden latency.
+ */
+public class LoadGenerator {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String url;
+    private final int rate;
+    private final int batch;
+    private final int concurrency;
+    private final boolean binary;
+    private final int queryRate;
+    private final int queryDays;
+    private final int uriCardinality;
+    private final SyntheticHits hits;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final Semaphore inFlight;
+    private final SplittableRandom random = new SplittableRandom(11);
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final Latencies hitLatencies = new Latencies();
+    private final Latencies statsLatencies = new Latencies();
+
+    LoadGenerator(Map<String, String> options) {
+        this.url = options.getOrDefault("url", "http://localhost:9090");
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "2000"));
+        this.batch = Integer.parseInt(options.getOrDefault("batch", "100"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        this.binary = "binary".equals(options.getOrDefault("format", "json"));
+        this.queryRate = Integer.parseInt(options.getOrDefault("query-rate", "10"));
+        this.queryDays = Integer.parseInt(options.getOrDefault("query-days", "30"));
+        this.uriCardinality = Integer.parseInt(options.getOrDefault("uris", "10000"));
+        this.hits = new SyntheticHits(uriCardinality, Integer.parseInt(options.getOrDefault("ips", "100000")),
+                Integer.parseInt(options.getOrDefault("history-days", "30")), 42);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new LoadGenerator(options).run(Integer.parseInt(options.getOrDefault("duration", "60")),
+                Integer.parseInt(options.getOrDefault("report", "10")));
+    }
+
+    void run(int durationSeconds, int reportSeconds) throws InterruptedException {
+        System.out.printf("Sending %d hits/s in batches of %d as %s to %s, %d /stats queries/s%n",
+                rate, batch, binary ? "binary" : "JSON", url, queryRate);
+        System.out.println("elapsed  accepted/s  rejected  failed  skipped  hit p50/p99 ms  stats p50/p99 ms");
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+        long batchPeriodNanos = TimeUnit.SECONDS.toNanos(1) * batch / rate;
+        scheduler.scheduleAtFixedRate(() -> sendBatch(senders), 0, batchPeriodNanos, TimeUnit.NANOSECONDS);
+        if (queryRate > 0) {
+            scheduler.scheduleAtFixedRate(() -> senders.submit(this::queryStats), 0,
+                    TimeUnit.SECONDS.toNanos(1) / queryRate, TimeUnit.NANOSECONDS);
+        }
+        long started = System.nanoTime();
+        long lastAccepted = 0;
+        for (int elapsed = reportSeconds; elapsed <= durationSeconds; elapsed += reportSeconds) {
+            TimeUnit.NANOSECONDS.sleep(started + TimeUnit.SECONDS.toNanos(elapsed) - System.nanoTime());
+            long total = accepted.get();
+            long[] hit = hitLatencies.drain();
+            long[] stats = statsLatencies.drain();
+            System.out.printf("%6ds  %10d  %8d  %6d  %7d  %6.1f/%-7.1f  %6.1f/%.1f%n", elapsed,
+                    (total - lastAccepted) / reportSeconds, rejected.get(), failed.get(), skipped.get(),
+                    percentile(hit, 0.5), percentile(hit, 0.99), percentile(stats, 0.5), percentile(stats, 0.99));
+            lastAccepted = total;
+        }
+        scheduler.shutdownNow();
+        senders.shutdown();
+        senders.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void sendBatch(ExecutorService senders) {
+        if (!inFlight.tryAcquire()) {
+            skipped.addAndGet(batch);
+            return;
+        }
+        List<EndpointHit> next = hits.next(batch);
+        senders.submit(() -> {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/hit/batch"))
+                        .timeout(Duration.ofSeconds(30))
+                        .header("Content-Type", binary ? HitCodec.MEDIA_TYPE : "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(binary ? HitCodec.encode(next)
+                                : objectMapper.writeValueAsBytes(next)))
+                        .build();
+                long sent = System.nanoTime();
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                hitLatencies.record(System.nanoTime() - sent);
+                if (status == 429) {
+                    rejected.addAndGet(next.size());
+                } else if (status >= 300) {
+                    failed.addAndGet(next.size());
+                } else {
+                    accepted.addAndGet(next.size());
+                }
+            } catch (IOException | InterruptedException e) {
+                failed.addAndGet(next.size());
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void queryStats() {
+        LocalDateTime end = LocalDateTime.now();
+        List<String> uris = new ArrayList<>();
+        boolean unique;
+        synchronized (random) {
+            for (int i = 0; i < 10; i++) {
+                uris.add(hits.uri(random.nextInt(uriCardinality)));
+            }
+            unique = random.nextBoolean();
+        }
+        String query = "/stats?start=" + encode(end.minusDays(queryDays).format(FORMATTER)) +
+                "&end=" + encode(end.format(FORMATTER)) + "&uris=" + encode(String.join(",", uris)) +
+                "&unique=" + unique;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + query))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Accept", "application/json")
+                    .build();
+            long sent = System.nanoTime();
+            int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            statsLatencies.record(System.nanoTime() - sent);
+            if (status >= 300) {
+                failed.incrementAndGet();
+            }
+        } catch (IOException | InterruptedException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))] / 1e6;
+    }
+
+    /**
+     * Latencies recorded since the last report, in nanoseconds.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized long[] drain() {
+            long[] drained = Arrays.copyOf(values, size);
+            size = 0;
+            Arrays.sort(drained);
+            return drained;
+        }
+    }
+}
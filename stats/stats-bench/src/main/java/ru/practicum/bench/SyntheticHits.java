@@ -0,0 +1,69 @@
+package ru.practicum.bench;
+
+import ru.practicum.dto.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Reproducible stream of hits over a fixed set of URIs and IPs. URI popularity is skewed, so a few pages get
+ * most of the traffic as on a real listing; timestamps fall uniformly within the last {@code historyDays}, or
+ * at the current time when it is 0. Not thread-safe.
+ */
+public class SyntheticHits {
+    public static final String APP = "ewm-main-service";
+
+    private final int uriCardinality;
+    private final int ipCardinality;
+    private final long historySeconds;
+    private final SplittableRandom random;
+
+    public SyntheticHits(int uriCardinality, int ipCardinality, int historyDays, long seed) {
+        this.uriCardinality = uriCardinality;
+        this.ipCardinality = ipCardinality;
+        this.historySeconds = historyDays * 86_400L;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public String uri(int index) {
+        return "/events/" + index;
+    }
+
+    public String ip(int index) {
+        return "10." + (index >>> 16 & 0xFF) + "." + (index >>> 8 & 0xFF) + "." + (index & 0xFF);
+    }
+
+    public int nextUriIndex() {
+        double skewed = random.nextDouble();
+        return (int) (skewed * skewed * uriCardinality);
+    }
+
+    public String nextIp() {
+        return ip(random.nextInt(ipCardinality));
+    }
+
+    public EndpointHit next() {
+        LocalDateTime timestamp = LocalDateTime.now().withNano(0);
+        if (historySeconds > 0) {
+            timestamp = timestamp.minusSeconds(random.nextLong(historySeconds));
+        }
+        return EndpointHit.builder()
+                .hitId(UUID.randomUUID().toString())
+                .app(APP)
+                .uri(uri(nextUriIndex()))
+                .ip(nextIp())
+                .timestamp(timestamp)
+                .build();
+    }
+
+    public List<EndpointHit> next(int count) {
+        List<EndpointHit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hits.add(next());
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.bench.jmh;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.bench.SyntheticHits;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.wire.HitCodec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a /hit/batch body into hits and back, JSON against the binary hit format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitCodecBenchmark {
+    private static final TypeReference<List<EndpointHit>> HITS = new TypeReference<>() {
+    };
+
+    @Param({"1", "500"})
+    private int batchSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private List<EndpointHit> hits;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        hits = new SyntheticHits(1000, 100_000, 30, 42).next(batchSize);
+        json = objectMapper.writeValueAsBytes(hits);
+        binary = HitCodec.encode(hits);
+        System.out.printf("%n%d hits: %d bytes as JSON, %d bytes binary%n", batchSize, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public List<EndpointHit> decodeJson() throws IOException {
+        return objectMapper.readValue(json, HITS);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return HitCodec.encode(hits);
+    }
+
+    @Benchmark
+    public List<EndpointHit> decodeBinary() {
+        return HitCodec.decode(binary);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.bench.jmh;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.bench.SyntheticHits;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.repository.HitDictionary;
+import ru.practicum.repository.RecentHitStore;
+import ru.practicum.repository.StatsCriteria;
+import ru.practicum.repository.UriFilter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory aggregation of the recent window, which serves /stats ranges that start within the last hours.
+ * The store is filled through {@link RecentHitStore#append} only; its database load is never triggered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecentHitStoreBenchmark {
+    @Param({"1000000"})
+    private int hits;
+
+    @Param({"1000"})
+    private int uriCardinality;
+
+    @Param({"false", "true"})
+    private boolean unique;
+
+    private RecentHitStore store;
+    private StatsCriteria tenUris;
+    private StatsCriteria allUris;
+
+    @Setup
+    public void setUp() {
+        HitDictionary dictionary = new HitDictionary(null, null);
+        store = new RecentHitStore(null, dictionary, null, new SimpleMeterRegistry(), 6, hits * 2, 65536);
+        SyntheticHits generator = new SyntheticHits(uriCardinality, 50_000, 0, 7);
+        for (int i = 0; i < uriCardinality; i++) {
+            dictionary.remember(1, SyntheticHits.APP, i, generator.uri(i));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < hits; i++) {
+            store.append(1, generator.nextUriIndex(), generator.nextIp(), now.minusSeconds(i % 18_000));
+        }
+        List<String> uris = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            uris.add(generator.uri(i * (uriCardinality / 10)));
+        }
+        tenUris = new StatsCriteria(now.minusHours(5), now, UriFilter.of(uris), null, unique, false);
+        allUris = new StatsCriteria(now.minusHours(5), now, UriFilter.ALL, null, unique, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> tenUris() {
+        return store.getStats(tenUris);
+    }
+
+    @Benchmark
+    public List<ViewStats> allUris() {
+        return store.getStats(allUris);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.bench.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The unique-count paths: folding IPs into a day sketch on ingest, and merging a month of stored day sketches
+ * per URI at query time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SketchBenchmark {
+    @Param({"12"})
+    private int precision;
+
+    @Param({"100", "100000"})
+    private int ipsPerDay;
+
+    private String[] ips;
+    private byte[][] days;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ips = new String[ipsPerDay];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+        }
+        days = new byte[30][];
+        for (int day = 0; day < days.length; day++) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            for (int i = 0; i < ipsPerDay; i++) {
+                sketch.add(day + "/" + ips[i]);
+            }
+            days[day] = sketch.toBytes();
+        }
+    }
+
+    @Benchmark
+    public HyperLogLog addDay() {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (String ip : ips) {
+            sketch.add(ip);
+        }
+        return sketch;
+    }
+
+    @Benchmark
+    public long mergeMonth() {
+        HyperLogLog merged = new HyperLogLog(precision);
+        for (byte[] day : days) {
+            merged = merged.merge(HyperLogLog.fromBytes(day));
+        }
+        return merged.estimate();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.statsclient;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry delay shared by all requests of one client: doubled whenever the server signals overload and halved on
+ * every success, so callers back off further the longer the server keeps shedding load and recover gradually.
+ * Sleeps are jittered so that threads rejected together do not come back together.
+ */
+class AdaptiveBackoff {
+    private final long minMillis;
+    private final long maxMillis;
+    private final AtomicLong delayMillis;
+
+    AdaptiveBackoff(long minMillis, long maxMillis) {
+        this.minMillis = minMillis;
+        this.maxMillis = Math.max(minMillis, maxMillis);
+        this.delayMillis = new AtomicLong(minMillis);
+    }
+
+    /**
+     * Grows the shared delay, never below the server's {@code Retry-After} hint, and returns the pause to take.
+     */
+    long onOverload(long retryAfterMillis) {
+        long delay = delayMillis.updateAndGet(current ->
+                Math.min(maxMillis, Math.max(current * 2, retryAfterMillis)));
+        return Math.max(retryAfterMillis, jitter(delay));
+    }
+
+    void onSuccess() {
+        delayMillis.updateAndGet(current -> Math.max(minMillis, current / 2));
+    }
+
+    long forAttempt(int attempt) {
+        return jitter(Math.min(maxMillis, delayMillis.get() << Math.min(attempt, 20)));
+    }
+
+    /**
+     * The server's {@code Retry-After} in milliseconds, or 0 when absent or given as an HTTP date.
+     */
+    static long retryAfterMillis(HttpHeaders headers) {
+        String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long jitter(long delay) {
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
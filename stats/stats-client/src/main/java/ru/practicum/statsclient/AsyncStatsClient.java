@@ -0,0 +1,21 @@
+package ru.practicum.statsclient;
+
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link StatsClient}: calls return at once and complete on the client's own threads.
+ * Futures fail with {@link java.util.concurrent.RejectedExecutionException} when too many calls are in flight.
+ */
+public interface AsyncStatsClient {
+    CompletableFuture<Void> hitAsync(EndpointHit endpointHit);
+
+    CompletableFuture<Void> hitAllAsync(List<EndpointHit> endpointHits);
+
+    CompletableFuture<List<ViewStats>> getStatsAsync(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                     boolean unique);
+}
@@ -0,0 +1,256 @@
+package ru.practicum.statsclient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClientResponseException;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsQuery;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.dto.wire.HitCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link AsyncStatsClient} on the JDK {@link HttpClient}. At most {@code stats-server.async.max-in-flight}
+ * requests are open at once, which also bounds its connections, and each request times out after
+ * {@code stats-server.read-timeout-ms}. Retries, backoff, sharding and the binary hit format behave as in
+ * {@link StatsClientImpl}; retries wait on a timer rather than on a caller's thread.
+ */
+@Service
+@Slf4j
+public class AsyncStatsClientImpl implements AsyncStatsClient {
+    private static final int HANDLER_THREADS = 4;
+
+    private final ShardRing shards;
+    private final int retries;
+    private final AdaptiveBackoff backoff;
+    private final Duration requestTimeout;
+    private final Semaphore inFlight;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService handlerExecutor;
+    private final HttpClient httpClient;
+    private volatile boolean binaryHits;
+
+    public AsyncStatsClientImpl(@Value("${stats-server.url:http://localhost:9090}") String serverUrl,
+                                @Value("${stats-server.shards:}") List<String> shardUrls,
+                                @Value("${stats-server.retries:2}") int retries,
+                                @Value("${stats-server.retry-backoff-ms:100}") long retryBackoffMillis,
+                                @Value("${stats-server.max-backoff-ms:5000}") long maxBackoffMillis,
+                                @Value("${stats-server.binary-hits:true}") boolean binaryHits,
+                                @Value("${stats-server.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                                @Value("${stats-server.read-timeout-ms:3000}") long readTimeoutMillis,
+                                @Value("${stats-server.async.max-in-flight:64}") int maxInFlight,
+                                ObjectMapper objectMapper) {
+        this.shards = ShardRing.of(serverUrl, shardUrls);
+        this.retries = retries;
+        this.backoff = new AdaptiveBackoff(retryBackoffMillis, maxBackoffMillis);
+        this.binaryHits = binaryHits;
+        this.requestTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.objectMapper = objectMapper;
+        this.handlerExecutor = Executors.newFixedThreadPool(HANDLER_THREADS,
+                Thread.ofPlatform().name("stats-async-", 0).daemon().factory());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(handlerExecutor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Void> hitAsync(EndpointHit endpointHit) {
+        assignHitId(endpointHit);
+        return postHits(shards.serverFor(endpointHit.getUri()), "/hit", List.of(endpointHit));
+    }
+
+    @Override
+    public CompletableFuture<Void> hitAllAsync(List<EndpointHit> endpointHits) {
+        if (endpointHits.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        endpointHits.forEach(this::assignHitId);
+        Map<String, List<EndpointHit>> routed = new LinkedHashMap<>();
+        endpointHits.forEach(hit ->
+                routed.computeIfAbsent(shards.serverFor(hit.getUri()), server -> new ArrayList<>()).add(hit));
+        return CompletableFuture.allOf(routed.entrySet().stream()
+                .map(entry -> postHits(entry.getKey(), "/hit/batch", entry.getValue()))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public CompletableFuture<List<ViewStats>> getStatsAsync(LocalDateTime start, LocalDateTime end,
+                                                            List<String> uris, boolean unique) {
+        List<CompletableFuture<List<ViewStats>>> parts = new ArrayList<>();
+        shards.route(uris).forEach((server, serverUris) -> parts.add(fetchStats(server, start, end, serverUris,
+                unique)));
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> ShardRing.merge(parts.stream().map(CompletableFuture::join).toList()));
+    }
+
+    private void assignHitId(EndpointHit endpointHit) {
+        if (endpointHit.getHitId() == null) {
+            endpointHit.setHitId(UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * A single hit goes to {@code /hit} as one object; the binary format encodes it as a batch of one.
+     */
+    private CompletableFuture<Void> postHits(String server, String path, List<EndpointHit> hits) {
+        return send(path, () -> hitRequest(server, path, hits))
+                .exceptionallyCompose(error -> {
+                    if (unwrap(error) instanceof HttpClientErrorException.UnsupportedMediaType && binaryHits) {
+                        log.info("Stats server does not accept binary hits, falling back to JSON");
+                        binaryHits = false;
+                        return send(path, () -> hitRequest(server, path, hits));
+                    }
+                    return CompletableFuture.failedFuture(error);
+                })
+                .thenApply(response -> null);
+    }
+
+    private HttpRequest hitRequest(String server, String path, List<EndpointHit> hits) {
+        boolean binary = binaryHits;
+        byte[] body = binary ? HitCodec.encode(hits) : toJson(path.equals("/hit") ? hits.get(0) : hits);
+        return HttpRequest.newBuilder(URI.create(server + path))
+                .timeout(requestTimeout)
+                .header(HttpHeaders.CONTENT_TYPE, binary ? HitCodec.MEDIA_TYPE : MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private CompletableFuture<List<ViewStats>> fetchStats(String server, LocalDateTime start, LocalDateTime end,
+                                                          List<String> uris, boolean unique) {
+        Supplier<HttpRequest> request;
+        if (StatsUris.needsQueryBody(uris)) {
+            byte[] body = toJson(StatsQuery.builder().start(start).end(end).uris(uris).unique(unique).build());
+            request = () -> HttpRequest.newBuilder(URI.create(server + "/stats/query"))
+                    .timeout(requestTimeout)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+        } else {
+            URI uri = StatsUris.stats(server, start, end, uris, unique);
+            request = () -> HttpRequest.newBuilder(uri)
+                    .timeout(requestTimeout)
+                    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                    .GET()
+                    .build();
+        }
+        return send("/stats", request).thenApply(response -> {
+            try {
+                return Arrays.asList(objectMapper.readValue(response.body(), ViewStats[].class));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(String path, Supplier<HttpRequest> request) {
+        return send(path, request, 0);
+    }
+
+    /**
+     * Retries I/O errors, timeouts, 5xx and 429 after a delay from the shared {@link AdaptiveBackoff}.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> send(String path, Supplier<HttpRequest> request, int attempt) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many stats requests in flight"));
+        }
+        CompletableFuture<HttpResponse<byte[]>> sent;
+        try {
+            sent = httpClient.sendAsync(request.get(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return sent.whenComplete((response, error) -> inFlight.release())
+                .handle((response, error) -> {
+                    Throwable failure = error != null ? unwrap(error) : statusError(response);
+                    if (failure == null) {
+                        backoff.onSuccess();
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    boolean overloaded = failure instanceof HttpClientErrorException.TooManyRequests;
+                    boolean retryable = overloaded || failure instanceof IOException
+                            || failure instanceof HttpServerErrorException;
+                    if (!retryable || attempt >= retries) {
+                        return CompletableFuture.<HttpResponse<byte[]>>failedFuture(failure);
+                    }
+                    long delay = overloaded
+                            ? backoff.onOverload(AdaptiveBackoff.retryAfterMillis(
+                                    ((RestClientResponseException) failure).getResponseHeaders()))
+                            : backoff.forAttempt(attempt);
+                    log.debug("Retrying {} in {} ms after attempt {} failed: {}", path, delay, attempt + 1,
+                            failure.getMessage());
+                    return CompletableFuture.runAsync(() -> {
+                    }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, handlerExecutor))
+                            .thenCompose(ignored -> send(path, request, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static RestClientResponseException statusError(HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        if (status < 400) {
+            return null;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        HttpStatusCode code = HttpStatusCode.valueOf(status);
+        String text = "HTTP " + status;
+        return status >= 500
+                ? HttpServerErrorException.create(code, text, headers, response.body(), StandardCharsets.UTF_8)
+                : HttpClientErrorException.create(code, text, headers, response.body(), StandardCharsets.UTF_8);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        handlerExecutor.shutdown();
+    }
+}
@@ -0,0 +1,249 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsQuery;
+import ru.practicum.dto.ViewStats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Caches per-URI view counts of {@link #getStats(LocalDateTime, LocalDateTime, List, boolean)} for
+ * {@code stats-server.cache.ttl-ms}. Only queries for exact URIs that end around now are cached; they are keyed by
+ * URI, {@code unique} and the start of the range truncated to the minute, which is how "views over the last year"
+ * reads look. Everything else goes straight to {@link StatsClientImpl}.
+ * <p>
+ * Misses are loaded once: a caller missing a URI that is already being loaded waits for that load. URIs missed
+ * within {@code batch-window-ms} of each other are loaded with one request for up to {@code max-batch-uris} URIs.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "stats-server.cache.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class CachingStatsClient implements StatsClient {
+    private final StatsClientImpl delegate;
+    private final long ttlNanos;
+    private final Duration ttl;
+    private final long batchWindowMillis;
+    private final int maxBatchUris;
+    private final int maxEntries;
+    private final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<ViewStats>> loading = new ConcurrentHashMap<>();
+    private final Map<Group, Batch> pending = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService loaderExecutor;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter coalescedCounter;
+
+    public CachingStatsClient(StatsClientImpl delegate,
+                              MeterRegistry meterRegistry,
+                              @Value("${stats-server.cache.ttl-ms:2000}") long ttlMillis,
+                              @Value("${stats-server.cache.batch-window-ms:5}") long batchWindowMillis,
+                              @Value("${stats-server.cache.max-batch-uris:200}") int maxBatchUris,
+                              @Value("${stats-server.cache.max-entries:100000}") int maxEntries) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxBatchUris = maxBatchUris;
+        this.maxEntries = maxEntries;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("stats-cache-batcher").daemon().factory());
+        this.loaderExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.hitCounter = meterRegistry.counter("stats.client.views.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("stats.client.views.cache", "result", "miss");
+        this.coalescedCounter = meterRegistry.counter("stats.client.views.cache", "result", "coalesced");
+    }
+
+    @Override
+    public void hit(EndpointHit endpointHit) {
+        delegate.hit(endpointHit);
+    }
+
+    @Override
+    public void hitAll(List<EndpointHit> endpointHits) {
+        delegate.hitAll(endpointHits);
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        if (!isCacheable(start, end, uris)) {
+            return delegate.getStats(start, end, uris, unique);
+        }
+        LocalDateTime startBucket = start.truncatedTo(ChronoUnit.MINUTES);
+        long now = System.nanoTime();
+        Map<String, ViewStats> found = new LinkedHashMap<>();
+        Map<String, CompletableFuture<ViewStats>> waiting = new LinkedHashMap<>();
+        for (String uri : uris) {
+            Key key = new Key(uri, unique, startBucket);
+            Entry entry = cache.get(key);
+            if (entry != null && now - entry.expiresNanos < 0) {
+                hitCounter.increment();
+                found.put(uri, entry.stats);
+                continue;
+            }
+            CompletableFuture<ViewStats> load = new CompletableFuture<>();
+            CompletableFuture<ViewStats> existing = loading.putIfAbsent(key, load);
+            if (existing != null) {
+                coalescedCounter.increment();
+                waiting.put(uri, existing);
+            } else {
+                missCounter.increment();
+                enqueue(new Group(unique, startBucket), key, start, end, load);
+                waiting.put(uri, load);
+            }
+        }
+        waiting.forEach((uri, load) -> found.put(uri, join(load)));
+        return found.values().stream()
+                .filter(stats -> stats.getHits() > 0)
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    @Override
+    public void getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                         Consumer<ViewStats> consumer) {
+        delegate.getStats(start, end, uris, unique, consumer);
+    }
+
+    @Override
+    public List<ViewStats> queryStats(StatsQuery query) {
+        return delegate.queryStats(query);
+    }
+
+    private boolean isCacheable(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return start != null && end != null && uris != null && !uris.isEmpty()
+                && uris.stream().noneMatch(uri -> uri.endsWith("*"))
+                && !end.isBefore(LocalDateTime.now().minus(ttl));
+    }
+
+    private void enqueue(Group group, Key key, LocalDateTime start, LocalDateTime end,
+                         CompletableFuture<ViewStats> load) {
+        Batch ready = null;
+        synchronized (pending) {
+            Batch batch = pending.get(group);
+            if (batch == null) {
+                batch = new Batch(start, end);
+                pending.put(group, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> dispatch(group, scheduled), batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.loads.put(key, load);
+            if (batch.loads.size() >= maxBatchUris) {
+                pending.remove(group);
+                ready = batch;
+            }
+        }
+        if (ready != null) {
+            Batch full = ready;
+            loaderExecutor.execute(() -> load(group, full));
+        }
+    }
+
+    private void dispatch(Group group, Batch batch) {
+        synchronized (pending) {
+            if (pending.get(group) != batch) {
+                return;
+            }
+            pending.remove(group);
+        }
+        loaderExecutor.execute(() -> load(group, batch));
+    }
+
+    private void load(Group group, Batch batch) {
+        List<String> uris = batch.loads.keySet().stream().map(Key::uri).toList();
+        try {
+            Map<String, ViewStats> byUri = new HashMap<>();
+            for (ViewStats stats : delegate.getStats(batch.start, batch.end, uris, group.unique)) {
+                byUri.merge(stats.getUri(), stats, (a, b) -> new ViewStats(a.getApp(), a.getUri(),
+                        a.getHits() + b.getHits()));
+            }
+            long expires = System.nanoTime() + ttlNanos;
+            evictIfFull();
+            batch.loads.forEach((key, load) -> {
+                ViewStats stats = byUri.getOrDefault(key.uri, new ViewStats(null, key.uri, 0L));
+                cache.put(key, new Entry(stats, expires));
+                loading.remove(key, load);
+                load.complete(stats);
+            });
+        } catch (RuntimeException e) {
+            batch.loads.forEach((key, load) -> {
+                loading.remove(key, load);
+                load.completeExceptionally(e);
+            });
+        }
+    }
+
+    private void evictIfFull() {
+        if (cache.size() < maxEntries) {
+            return;
+        }
+        long now = System.nanoTime();
+        cache.values().removeIf(entry -> now - entry.expiresNanos >= 0);
+        if (cache.size() >= maxEntries) {
+            log.debug("Views cache is full, clearing {} entries", cache.size());
+            cache.clear();
+        }
+    }
+
+    private static ViewStats join(CompletableFuture<ViewStats> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        loaderExecutor.shutdown();
+    }
+
+    private record Key(String uri, boolean unique, LocalDateTime startBucket) {
+    }
+
+    private record Group(boolean unique, LocalDateTime startBucket) {
+    }
+
+    private record Entry(ViewStats stats, long expiresNanos) {
+    }
+
+    private static final class Batch {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final Map<Key, CompletableFuture<ViewStats>> loads = new LinkedHashMap<>();
+
+        private Batch(LocalDateTime start, LocalDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import ru.practicum.dto.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects hits from request threads and sends them from one background thread as {@code /hit/batch} calls,
+ * once {@code batch-size} hits are waiting or {@code flush-interval-ms} has passed.
+ * <p>
+ * The queue is a lock-free linked queue bounded by {@code capacity} through a counter reserved before each
+ * offer. When it is full, {@code overflow=drop} drops the hit and {@code overflow=block} waits up to
+ * {@code block-timeout-ms} for room first. Hits still queued at shutdown are flushed before the client goes away.
+ * A caller that must read its own hit uses {@link #submitAndFlush}, which sends the queue at once.
+ * <p>
+ * Batches the server could not take for the moment (I/O error, 5xx, 429) are written to the {@link HitSpool}, when
+ * there is one, and replayed from the same thread: at most one spooled batch every {@code replay-interval-ms}, only
+ * while the live queue holds less than a batch, and after a failed replay not again for {@code replay-retry-ms}.
+ * A batch the server rejects outright is dropped, whether live or replayed.
+ */
+@Component
+@Slf4j
+public class HitBatcher {
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final StatsClient statsClient;
+    private final HitSpool spool;
+    private final ConcurrentLinkedQueue<EndpointHit> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> flushWaiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final long shutdownTimeoutMillis;
+    private final long replayIntervalNanos;
+    private final long replayRetryNanos;
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Counter replayedCounter;
+    private final Thread sender;
+    private volatile boolean running = true;
+    private long nextReplayNanos = System.nanoTime();
+
+    public HitBatcher(StatsClient statsClient,
+                      Optional<HitSpool> spool,
+                      MeterRegistry meterRegistry,
+                      @Value("${stats-server.batch.capacity:10000}") int capacity,
+                      @Value("${stats-server.batch.size:100}") int batchSize,
+                      @Value("${stats-server.batch.flush-interval-ms:200}") long flushIntervalMillis,
+                      @Value("${stats-server.batch.overflow:drop}") String overflow,
+                      @Value("${stats-server.batch.block-timeout-ms:50}") long blockTimeoutMillis,
+                      @Value("${stats-server.batch.shutdown-timeout-ms:5000}") long shutdownTimeoutMillis,
+                      @Value("${stats-server.spool.replay-interval-ms:50}") long replayIntervalMillis,
+                      @Value("${stats-server.spool.replay-retry-ms:5000}") long replayRetryMillis) {
+        this.statsClient = statsClient;
+        this.spool = spool.orElse(null);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflow.trim().toUpperCase());
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.replayIntervalNanos = TimeUnit.MILLISECONDS.toNanos(replayIntervalMillis);
+        this.replayRetryNanos = TimeUnit.MILLISECONDS.toNanos(replayRetryMillis);
+        this.sentCounter = meterRegistry.counter("stats.client.hits.sent");
+        this.droppedCounter = meterRegistry.counter("stats.client.hits.dropped");
+        this.failedCounter = meterRegistry.counter("stats.client.hits.failed");
+        this.replayedCounter = meterRegistry.counter("stats.client.hits.replayed");
+        Gauge.builder("stats.client.hits.queued", size, AtomicInteger::get).register(meterRegistry);
+        this.sender = new Thread(this::runSender, "stats-hit-batcher");
+        this.sender.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        log.info("Hit batching enabled: capacity={}, batchSize={}, flushInterval={}ms, overflow={}",
+                capacity, batchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), overflowPolicy);
+        sender.start();
+    }
+
+    /**
+     * Queues a hit without waiting for the server. Returns {@code false} if it was dropped.
+     */
+    public boolean submit(EndpointHit hit) {
+        if (!running || !reserve()) {
+            droppedCounter.increment();
+            return false;
+        }
+        queue.offer(hit);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(sender);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a hit and has it sent right away rather than at the next flush. The returned future completes once
+     * the batch holding it was sent, spooled or given up on, and never exceptionally; it is already complete if
+     * the hit was dropped.
+     */
+    public CompletableFuture<Void> submitAndFlush(EndpointHit hit) {
+        if (!submit(hit)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        flushWaiters.offer(flushed);
+        LockSupport.unpark(sender);
+        return flushed;
+    }
+
+    public int getQueued() {
+        return size.get();
+    }
+
+    private boolean reserve() {
+        if (tryReserve()) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            return false;
+        }
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline && running) {
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            if (tryReserve()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void runSender() {
+        while (running || size.get() > 0) {
+            if (running && size.get() < batchSize && flushWaiters.isEmpty()) {
+                LockSupport.parkNanos(this, parkNanos());
+            }
+            // A waiter's hit was queued before the waiter, so the flush below takes it
+            List<CompletableFuture<Void>> waiters = new ArrayList<>();
+            CompletableFuture<Void> waiter;
+            while ((waiter = flushWaiters.poll()) != null) {
+                waiters.add(waiter);
+            }
+            flush();
+            waiters.forEach(flushed -> flushed.complete(null));
+            if (running) {
+                replay();
+            }
+        }
+        flushWaiters.forEach(flushed -> flushed.complete(null));
+    }
+
+    private long parkNanos() {
+        if (spool == null || spool.isEmpty()) {
+            return flushIntervalNanos;
+        }
+        return Math.max(0, Math.min(flushIntervalNanos, nextReplayNanos - System.nanoTime()));
+    }
+
+    /**
+     * Sends one spooled batch if it is due and live hits are not backing up.
+     */
+    private void replay() {
+        if (spool == null || System.nanoTime() - nextReplayNanos < 0 || size.get() >= batchSize) {
+            return;
+        }
+        List<EndpointHit> batch = spool.peek();
+        if (batch == null) {
+            return;
+        }
+        try {
+            statsClient.hitAll(batch);
+            spool.commit();
+            replayedCounter.increment(batch.size());
+            nextReplayNanos = System.nanoTime() + replayIntervalNanos;
+        } catch (RuntimeException e) {
+            if (!isRetryable(e)) {
+                // Sending it again would fail the same way and hold up every batch spooled after it
+                spool.commit();
+                failedCounter.increment(batch.size());
+                log.warn("Stats server rejected {} spooled hits, dropping them: {}", batch.size(), e.getMessage());
+                nextReplayNanos = System.nanoTime() + replayIntervalNanos;
+                return;
+            }
+            log.debug("Replaying {} spooled hits failed: {}", batch.size(), e.getMessage());
+            nextReplayNanos = System.nanoTime() + replayRetryNanos;
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            List<EndpointHit> batch = new ArrayList<>(batchSize);
+            EndpointHit hit;
+            while (batch.size() < batchSize && (hit = queue.poll()) != null) {
+                batch.add(hit);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            size.addAndGet(-batch.size());
+            send(batch);
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void send(List<EndpointHit> batch) {
+        try {
+            statsClient.hitAll(batch);
+            sentCounter.increment(batch.size());
+        } catch (RuntimeException e) {
+            if (spool != null && isRetryable(e) && spool.append(batch)) {
+                log.warn("Failed to send {} hits to stats server, spooled them: {}", batch.size(), e.getMessage());
+                nextReplayNanos = System.nanoTime() + replayRetryNanos;
+                return;
+            }
+            failedCounter.increment(batch.size());
+            log.warn("Failed to send {} hits to stats server: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * I/O errors, 5xx and 429 may pass; any other rejection of the batch is final.
+     */
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof RestClientResponseException response) {
+            return response.getStatusCode().is5xxServerError()
+                    || response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return e instanceof ResourceAccessException;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(sender);
+        sender.join(shutdownTimeoutMillis);
+        if (sender.isAlive()) {
+            log.warn("Stats hit batcher did not finish within {} ms, {} hits not sent", shutdownTimeoutMillis,
+                    size.get());
+        }
+    }
+}
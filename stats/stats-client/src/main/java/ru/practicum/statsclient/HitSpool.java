@@ -0,0 +1,253 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.wire.HitCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Append-only local store for hits that could not be delivered. Each failed batch is written as one record,
+ * a length followed by the batch in the binary hit format, to the newest segment file; a segment is closed once
+ * it reaches {@code segment-bytes}, and when the spool would grow past {@code max-bytes} the oldest segments
+ * are deleted.
+ * <p>
+ * Records are read back oldest first with {@link #peek()} and dropped with {@link #commit()} once delivered.
+ * A fully replayed segment is deleted; a partly replayed one is read again from the start after a restart,
+ * which is harmless because the server deduplicates hits by their id.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class HitSpool {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("hits-(\\d+)\\.seg");
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Counter spooledCounter;
+    private final Counter droppedCounter;
+    private final Counter droppedSegmentsCounter;
+    private FileChannel writer;
+    private long nextSequence;
+    private long totalBytes;
+    private long readOffset;
+    private int pendingLength = -1;
+
+    public HitSpool(@Value("${stats-server.spool.dir:${java.io.tmpdir}/stats-spool}") String directory,
+                    @Value("${stats-server.spool.segment-bytes:8388608}") long segmentBytes,
+                    @Value("${stats-server.spool.max-bytes:268435456}") long maxBytes,
+                    MeterRegistry meterRegistry) {
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = Math.max(segmentBytes, maxBytes);
+        this.spooledCounter = meterRegistry.counter("stats.client.hits.spooled");
+        this.droppedCounter = meterRegistry.counter("stats.client.spool.dropped");
+        this.droppedSegmentsCounter = meterRegistry.counter("stats.client.spool.segments.dropped");
+        Gauge.builder("stats.client.spool.bytes", this, HitSpool::getTotalBytes).register(meterRegistry);
+        try {
+            Files.createDirectories(this.directory);
+            loadSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open hit spool in " + directory, e);
+        }
+        if (totalBytes > 0) {
+            log.info("Hit spool in {} holds {} bytes from a previous run", directory, totalBytes);
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return totalBytes == 0;
+    }
+
+    /**
+     * Appends a batch, making room by deleting the oldest segments. Returns {@code false} if it was not stored.
+     */
+    public synchronized boolean append(List<EndpointHit> hits) {
+        byte[] encoded = HitCodec.encode(hits);
+        long recordBytes = Integer.BYTES + encoded.length;
+        try {
+            if (writer == null || writer.size() + recordBytes > segmentBytes) {
+                rotate();
+            }
+            while (totalBytes + recordBytes > maxBytes && segments.size() > 1) {
+                dropOldest();
+            }
+            if (totalBytes + recordBytes > maxBytes) {
+                droppedCounter.increment(hits.size());
+                return false;
+            }
+            ByteBuffer record = ByteBuffer.allocate((int) recordBytes).putInt(encoded.length).put(encoded).flip();
+            while (record.hasRemaining()) {
+                writer.write(record);
+            }
+            writer.force(false);
+            segments.peekLast().size += recordBytes;
+            totalBytes += recordBytes;
+            spooledCounter.increment(hits.size());
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to spool {} hits: {}", hits.size(), e.getMessage());
+            droppedCounter.increment(hits.size());
+            return false;
+        }
+    }
+
+    /**
+     * The oldest undelivered batch, or {@code null} when the spool is empty. It stays in the spool until
+     * {@link #commit()}.
+     */
+    public synchronized List<EndpointHit> peek() {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            if (readOffset >= oldest.size) {
+                if (oldest.path.equals(activePath())) {
+                    if (oldest.size == 0) {
+                        return null;
+                    }
+                    // The active segment is used up: start a new one so this one can be deleted
+                    rotateQuietly();
+                }
+                deleteOldest();
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(oldest.path, StandardOpenOption.READ)) {
+                int length = readFully(channel, ByteBuffer.allocate(Integer.BYTES), readOffset).getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || readOffset + Integer.BYTES + length > oldest.size) {
+                    throw new IllegalArgumentException("bad record length " + length);
+                }
+                ByteBuffer body = readFully(channel, ByteBuffer.allocate(length), readOffset + Integer.BYTES);
+                List<EndpointHit> hits = HitCodec.decode(body.array());
+                pendingLength = length;
+                return hits;
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Discarding unreadable rest of spool segment {}: {}", oldest.path, e.getMessage());
+                readOffset = oldest.size;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the batch last returned by {@link #peek()} after it was delivered.
+     */
+    public synchronized void commit() {
+        if (pendingLength < 0) {
+            return;
+        }
+        readOffset += Integer.BYTES + pendingLength;
+        pendingLength = -1;
+        Segment oldest = segments.peekFirst();
+        if (oldest != null && readOffset >= oldest.size && !oldest.path.equals(activePath())) {
+            deleteOldest();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.sorted().toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    long size = Files.size(path);
+                    segments.addLast(new Segment(path, size));
+                    totalBytes += size;
+                    nextSequence = Math.max(nextSequence, Long.parseLong(matcher.group(1)) + 1);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        Path path = directory.resolve(String.format("hits-%020d.seg", nextSequence++));
+        writer = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segments.addLast(new Segment(path, 0));
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (IOException e) {
+            log.warn("Failed to start a new spool segment: {}", e.getMessage());
+        }
+    }
+
+    private Path activePath() {
+        return writer != null ? segments.peekLast().path : null;
+    }
+
+    private void dropOldest() {
+        Segment oldest = segments.peekFirst();
+        log.warn("Hit spool is over {} bytes, dropping segment {}", maxBytes, oldest.path);
+        droppedSegmentsCounter.increment();
+        deleteOldest();
+    }
+
+    private void deleteOldest() {
+        Segment oldest = segments.pollFirst();
+        totalBytes -= oldest.size;
+        readOffset = 0;
+        pendingLength = -1;
+        try {
+            Files.deleteIfExists(oldest.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool segment {}: {}", oldest.path, e.getMessage());
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private long size;
+
+        private Segment(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
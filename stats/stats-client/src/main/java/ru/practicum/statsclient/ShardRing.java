@@ -0,0 +1,115 @@
+package ru.practicum.statsclient;
+
+import ru.practicum.dto.ViewStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring of stats-server base URLs. Every URI is owned by exactly one server, and adding or
+ * removing a server moves only the URIs between it and its ring neighbours, about 1/n of them.
+ */
+class ShardRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final List<String> servers;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    ShardRing(List<String> servers) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one stats server is required");
+        }
+        this.servers = List.copyOf(servers);
+        for (String server : servers) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash(server + '#' + node), server);
+            }
+        }
+    }
+
+    /**
+     * The servers listed in {@code stats-server.shards}, or just {@code serverUrl} when none are.
+     */
+    static ShardRing of(String serverUrl, List<String> shardUrls) {
+        List<String> servers = shardUrls.stream().map(String::trim).filter(url -> !url.isEmpty()).toList();
+        return new ShardRing(servers.isEmpty() ? List.of(serverUrl) : servers);
+    }
+
+    List<String> servers() {
+        return servers;
+    }
+
+    boolean isSingle() {
+        return servers.size() == 1;
+    }
+
+    String serverFor(String uri) {
+        if (isSingle()) {
+            return servers.get(0);
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(uri));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Groups URIs by owning server. A prefix pattern ending with {@code *} can match URIs on any server, so it is
+     * sent to all of them, and so is a query without URIs, as a {@code null} list.
+     */
+    Map<String, List<String>> route(List<String> uris) {
+        Map<String, List<String>> routed = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            servers.forEach(server -> routed.put(server, null));
+            return routed;
+        }
+        for (String uri : uris) {
+            if (uri.endsWith("*")) {
+                servers.forEach(server -> routed.computeIfAbsent(server, s -> new ArrayList<>()).add(uri));
+            } else {
+                routed.computeIfAbsent(serverFor(uri), s -> new ArrayList<>()).add(uri);
+            }
+        }
+        return routed;
+    }
+
+    /**
+     * Combines per-server results. A URI lives on one server, but prefix patterns and unfiltered queries can
+     * return rows from several.
+     */
+    static List<ViewStats> merge(List<List<ViewStats>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        Map<List<String>, ViewStats> merged = new LinkedHashMap<>();
+        for (List<ViewStats> part : parts) {
+            for (ViewStats stat : part) {
+                merged.merge(List.of(stat.getApp(), stat.getUri()), stat, (a, b) ->
+                        new ViewStats(a.getApp(), a.getUri(), a.getHits() + b.getHits()));
+            }
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    /**
+     * FNV-1a over UTF-8 with a final avalanche step, so similar URIs spread evenly around the ring.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
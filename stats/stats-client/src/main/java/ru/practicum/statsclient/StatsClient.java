@@ -1,12 +1,21 @@
 package ru.practicum.statsclient;
 import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsQuery;
 import ru.practicum.dto.ViewStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsClient {
     void hit(EndpointHit endpointHit);
 
+    void hitAll(List<EndpointHit> endpointHits);
+
     List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+
+    void getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                  Consumer<ViewStats> consumer);
+
+    List<ViewStats> queryStats(StatsQuery query);
 }
@@ -1,55 +1,266 @@
 package ru.practicum.statsclient;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsQuery;
 import ru.practicum.dto.ViewStats;
+import ru.practicum.dto.wire.HitMessageConverter;
 
 import java.net.URI;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Talks to one stats-server, or to several when {@code stats-server.shards} lists them: each URI is then owned by
+ * one server picked by consistent hashing, hits go to their URI's owner and stats queries fan out in parallel to
+ * the owners of the requested URIs (all servers when no URIs are given) and are merged.
+ */
 @Service
 @Slf4j
 public class StatsClientImpl implements StatsClient {
     private final RestTemplate restTemplate;
-    private final String serverUrl;
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final ShardRing shards;
+    private final ExecutorService fanOutExecutor;
+    private final int retries;
+    private final AdaptiveBackoff backoff;
+    private final ObjectReader viewStatsReader;
+    private volatile boolean binaryHits;
 
     public StatsClientImpl(@Value("${stats-server.url:http://localhost:9090}") String serverUrl,
-                           RestTemplateBuilder builder) {
-        this.serverUrl = serverUrl;
-        this.restTemplate = builder.build();
+                           @Value("${stats-server.retries:2}") int retries,
+                           @Value("${stats-server.retry-backoff-ms:100}") long retryBackoffMillis,
+                           @Value("${stats-server.max-backoff-ms:5000}") long maxBackoffMillis,
+                           @Value("${stats-server.binary-hits:true}") boolean binaryHits,
+                           @Value("${stats-server.shards:}") List<String> shardUrls,
+                           @Value("${stats-server.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                           @Value("${stats-server.read-timeout-ms:3000}") long readTimeoutMillis,
+                           RestTemplateBuilder builder,
+                           ObjectMapper objectMapper) {
+        this.shards = ShardRing.of(serverUrl, shardUrls);
+        this.fanOutExecutor = shards.isSingle() ? null : Executors.newVirtualThreadPerTaskExecutor();
+        if (!shards.isSingle()) {
+            log.info("Stats client sharding over {}", shards.servers());
+        }
+        this.retries = retries;
+        this.backoff = new AdaptiveBackoff(retryBackoffMillis, maxBackoffMillis);
+        this.binaryHits = binaryHits;
+        this.restTemplate = builder
+                .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
+                .additionalMessageConverters(new HitMessageConverter())
+                .build();
+        this.viewStatsReader = objectMapper.readerFor(ViewStats.class);
     }
 
     @Override
     public void hit(EndpointHit endpointHit) {
-        restTemplate.postForEntity(serverUrl + "/hit", endpointHit, Object.class);
+        assignHitId(endpointHit);
+        postWithRetry(shards.serverFor(endpointHit.getUri()), "/hit", endpointHit);
+    }
+
+    @Override
+    public void hitAll(List<EndpointHit> endpointHits) {
+        if (endpointHits.isEmpty()) {
+            return;
+        }
+        endpointHits.forEach(this::assignHitId);
+        if (shards.isSingle()) {
+            postWithRetry(shards.servers().get(0), "/hit/batch", endpointHits);
+            return;
+        }
+        Map<String, List<EndpointHit>> routed = new LinkedHashMap<>();
+        endpointHits.forEach(hit ->
+                routed.computeIfAbsent(shards.serverFor(hit.getUri()), server -> new ArrayList<>()).add(hit));
+        fanOut(routed, (server, hits) -> {
+            postWithRetry(server, "/hit/batch", hits);
+            return null;
+        });
+    }
+
+    private void assignHitId(EndpointHit endpointHit) {
+        if (endpointHit.getHitId() == null) {
+            endpointHit.setHitId(UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Hits carry a client id the server deduplicates on, so a request that timed out can be sent again
+     * without counting the hit twice.
+     * <p>
+     * Hits go out in the binary hit format unless the server answers 415, after which this client sticks to JSON.
+     */
+    private void postWithRetry(String server, String path, Object body) {
+        withRetry(path, () -> {
+            try {
+                return restTemplate.postForEntity(server + path, hitEntity(body), Object.class);
+            } catch (HttpClientErrorException.UnsupportedMediaType e) {
+                if (!binaryHits) {
+                    throw e;
+                }
+                log.info("Stats server does not accept binary hits, falling back to JSON");
+                binaryHits = false;
+                return restTemplate.postForEntity(server + path, hitEntity(body), Object.class);
+            }
+        });
+    }
+
+    /**
+     * Retries I/O errors, 5xx and 429 responses. A 429 is the server shedding load: the pause honours its
+     * {@code Retry-After} and grows with every further rejection across all requests of this client.
+     */
+    private <T> T withRetry(String path, Supplier<T> request) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = request.get();
+                backoff.onSuccess();
+                return result;
+            } catch (HttpClientErrorException.TooManyRequests e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                long pause = backoff.onOverload(AdaptiveBackoff.retryAfterMillis(e.getResponseHeaders()));
+                log.debug("Stats server is overloaded, retrying {} in {} ms", path, pause);
+                sleep(pause);
+            } catch (ResourceAccessException | HttpServerErrorException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                log.debug("Retrying {} after attempt {} failed: {}", path, attempt + 1, e.getMessage());
+                sleep(backoff.forAttempt(attempt));
+            }
+        }
+    }
+
+    private HttpEntity<Object> hitEntity(Object body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(binaryHits ? HitMessageConverter.MEDIA_TYPE : MediaType.APPLICATION_JSON);
+        return new HttpEntity<>(body, headers);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while retrying stats request", e);
+        }
     }
 
     @Override
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                                     List<String> uris, boolean unique) {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats")
-                .queryParam("start", start.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-                .queryParam("end", end.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-                .queryParam("unique", unique);
+        if (shards.isSingle()) {
+            return fetchStats(shards.servers().get(0), start, end, uris, unique);
+        }
+        return ShardRing.merge(fanOut(shards.route(uris),
+                (server, serverUris) -> fetchStats(server, start, end, serverUris, unique)));
+    }
 
-        if (uris != null && !uris.isEmpty()) {
-            builder.queryParam("uris", String.join(",", uris));
+    /**
+     * With several shards the rows arrive shard by shard, each shard in its own order.
+     */
+    @Override
+    public void getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                         Consumer<ViewStats> consumer) {
+        shards.route(uris).forEach((server, serverUris) -> {
+            URI uri = StatsUris.stats(server, start, end, serverUris, unique);
+
+            log.info("Streaming stats from: {}", uri.toString());
+            restTemplate.execute(uri, HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_NDJSON)),
+                    response -> {
+                        try (MappingIterator<ViewStats> rows = viewStatsReader.readValues(response.getBody())) {
+                            while (rows.hasNextValue()) {
+                                consumer.accept(rows.nextValue());
+                            }
+                        }
+                        return null;
+                    });
+        });
+    }
+
+    @Override
+    public List<ViewStats> queryStats(StatsQuery query) {
+        if (shards.isSingle()) {
+            return postQuery(shards.servers().get(0), query);
         }
+        return ShardRing.merge(fanOut(shards.route(query.getUris()), (server, serverUris) -> postQuery(server,
+                new StatsQuery(query.getStart(), query.getEnd(), serverUris, query.getUnique(), query.getExact()))));
+    }
 
-        URI uri = builder.build().toUri();
+    private List<ViewStats> fetchStats(String server, LocalDateTime start, LocalDateTime end,
+                                       List<String> uris, boolean unique) {
+        if (StatsUris.needsQueryBody(uris)) {
+            return postQuery(server, StatsQuery.builder()
+                    .start(start)
+                    .end(end)
+                    .uris(uris)
+                    .unique(unique)
+                    .build());
+        }
+        URI uri = StatsUris.stats(server, start, end, uris, unique);
 
         log.info("Requesting stats from: {}", uri.toString());
-        ResponseEntity<ViewStats[]> response = restTemplate.getForEntity(uri, ViewStats[].class);
+        ResponseEntity<ViewStats[]> response = withRetry("/stats",
+                () -> restTemplate.getForEntity(uri, ViewStats[].class));
         return Arrays.asList(response.getBody());
     }
-}
\ No newline at end of file
+
+    private List<ViewStats> postQuery(String server, StatsQuery query) {
+        log.info("Querying stats for {} uris", query.getUris() != null ? query.getUris().size() : 0);
+        ResponseEntity<ViewStats[]> response = withRetry("/stats/query",
+                () -> restTemplate.postForEntity(server + "/stats/query", query, ViewStats[].class));
+        return Arrays.asList(response.getBody());
+    }
+
+    private <T, R> List<R> fanOut(Map<String, T> routed, BiFunction<String, T, R> call) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(routed.size());
+        routed.forEach((server, part) ->
+                futures.add(CompletableFuture.supplyAsync(() -> call.apply(server, part), fanOutExecutor)));
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdown();
+        }
+    }
+}
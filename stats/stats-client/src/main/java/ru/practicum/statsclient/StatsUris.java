@@ -0,0 +1,39 @@
+package ru.practicum.statsclient;
+
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Request URLs shared by the blocking and the asynchronous client.
+ */
+final class StatsUris {
+    // Longer URI lists, and prefix patterns, which GET /stats matches exactly, go in a POST /stats/query body
+    static final int MAX_QUERY_STRING_URIS = 20;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private StatsUris() {
+    }
+
+    static boolean needsQueryBody(List<String> uris) {
+        return uris != null
+                && (uris.size() > MAX_QUERY_STRING_URIS || uris.stream().anyMatch(uri -> uri.endsWith("*")));
+    }
+
+    static URI stats(String server, LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(server + "/stats")
+                .queryParam("start", start.format(FORMATTER))
+                .queryParam("end", end.format(FORMATTER))
+                .queryParam("unique", unique);
+
+        if (uris != null && !uris.isEmpty()) {
+            builder.queryParam("uris", String.join(",", uris));
+        }
+
+        return builder.build().toUri();
+    }
+}
@@ -0,0 +1,144 @@
+package ru.practicum.statsclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import ru.practicum.dto.ViewStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncStatsClientImplTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 12, 31, 23, 59, 59);
+    private static final String BODY = "[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":3}]";
+
+    private final ConcurrentLinkedQueue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean hold;
+    private HttpServer server;
+    private AsyncStatsClientImpl client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/stats", this::respond);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        if (client != null) {
+            client.shutdown();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void retriesServerErrorsAndOverload() {
+        statuses.add(503);
+        statuses.add(429);
+        client = client(2, 8);
+
+        List<ViewStats> stats = client.getStatsAsync(START, END, List.of("/events/1"), false).join();
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 3L)), stats);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void givesUpAfterTheLastRetry() {
+        statuses.add(500);
+        statuses.add(500);
+        client = client(1, 8);
+
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> client.getStatsAsync(START, END, List.of("/events/1"), false).join());
+
+        assertInstanceOf(HttpServerErrorException.InternalServerError.class, error.getCause());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        statuses.add(400);
+        client = client(2, 8);
+
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> client.getStatsAsync(START, END, List.of("/events/1"), false).join());
+
+        assertInstanceOf(HttpClientErrorException.BadRequest.class, error.getCause());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void rejectsRequestsBeyondTheInFlightCapAndFreesThePermitOnCompletion() throws Exception {
+        hold = true;
+        client = client(0, 1);
+
+        CompletableFuture<List<ViewStats>> first = client.getStatsAsync(START, END, List.of("/events/1"), false);
+        CompletableFuture<List<ViewStats>> second = client.getStatsAsync(START, END, List.of("/events/2"), false);
+
+        CompletionException error = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertFalse(first.isDone());
+
+        hold = false;
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, client.getStatsAsync(START, END, List.of("/events/1"), false)
+                .get(5, TimeUnit.SECONDS).size());
+        assertEquals(2, requests.get());
+    }
+
+    private AsyncStatsClientImpl client(int retries, int maxInFlight) {
+        return new AsyncStatsClientImpl("http://localhost:" + server.getAddress().getPort(), List.of(),
+                retries, 1, 10, false, 1000, 3000, maxInFlight, new ObjectMapper());
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (hold) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Integer status = statuses.poll();
+        byte[] body = (status == null ? BODY : "{}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (status != null && status == 429) {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+        }
+        exchange.sendResponseHeaders(status == null ? 200 : status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
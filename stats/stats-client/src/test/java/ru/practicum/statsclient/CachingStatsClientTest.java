@@ -0,0 +1,132 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import ru.practicum.dto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingStatsClientTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private final StatsClientImpl delegate = mock(StatsClientImpl.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CachingStatsClient client;
+
+    @AfterEach
+    void stop() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentMissesForTheSameUriShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.getStats(any(), any(), anyList(), anyBoolean())).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(stats("/events/1", 3));
+        });
+        client = client(60_000);
+
+        CompletableFuture<List<ViewStats>> first = CompletableFuture.supplyAsync(() -> views("/events/1"));
+        loading.await(5, TimeUnit.SECONDS);
+        CompletableFuture<List<ViewStats>> second = CompletableFuture.supplyAsync(() -> views("/events/1"));
+        awaitCoalesced();
+        release.countDown();
+
+        assertEquals(List.of(stats("/events/1", 3)), first.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(stats("/events/1", 3)), second.get(5, TimeUnit.SECONDS));
+        verify(delegate, times(1)).getStats(any(), any(), anyList(), anyBoolean());
+    }
+
+    @Test
+    void servesFromCacheUntilTheTtlExpires() throws Exception {
+        when(delegate.getStats(any(), any(), anyList(), anyBoolean())).thenReturn(List.of(stats("/events/1", 3)));
+        client = client(100);
+
+        views("/events/1");
+        views("/events/1");
+        verify(delegate, times(1)).getStats(any(), any(), anyList(), anyBoolean());
+
+        Thread.sleep(150);
+        views("/events/1");
+        verify(delegate, times(2)).getStats(any(), any(), anyList(), anyBoolean());
+        assertEquals(1.0, meterRegistry.counter("stats.client.views.cache", "result", "hit").count());
+    }
+
+    @Test
+    void loadsTheMissedUrisOfOneCallInOneRequestAndCachesZeroCounts() {
+        when(delegate.getStats(any(), any(), anyList(), anyBoolean())).thenReturn(List.of(stats("/events/1", 3)));
+        client = client(60_000);
+
+        assertEquals(List.of(stats("/events/1", 3)), views("/events/1", "/events/2"));
+        assertEquals(List.of(), views("/events/2"));
+
+        verify(delegate, times(1)).getStats(any(), any(), eq(List.of("/events/1", "/events/2")), anyBoolean());
+    }
+
+    @Test
+    void doesNotCacheFailedLoads() {
+        when(delegate.getStats(any(), any(), anyList(), anyBoolean()))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .thenReturn(List.of(stats("/events/1", 3)));
+        client = client(60_000);
+
+        assertThrows(HttpServerErrorException.class, () -> views("/events/1"));
+        assertEquals(List.of(stats("/events/1", 3)), views("/events/1"));
+    }
+
+    @Test
+    void passesPrefixAndPastQueriesThrough() {
+        client = client(60_000);
+        LocalDateTime end = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+        client.getStats(START, LocalDateTime.now(), List.of("/events/*"), false);
+        client.getStats(START, end, List.of("/events/1"), false);
+        client.getStats(START, end, List.of("/events/1"), false);
+
+        verify(delegate).getStats(any(), any(), eq(List.of("/events/*")), eq(false));
+        verify(delegate, times(2)).getStats(START, end, List.of("/events/1"), false);
+    }
+
+    private CachingStatsClient client(long ttlMillis) {
+        return new CachingStatsClient(delegate, meterRegistry, ttlMillis, 20, 200, 1000);
+    }
+
+    private List<ViewStats> views(String... uris) {
+        return client.getStats(START, LocalDateTime.now(), List.of(uris), false);
+    }
+
+    private void awaitCoalesced() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.counter("stats.client.views.cache", "result", "coalesced").count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static ViewStats stats(String uri, long hits) {
+        return new ViewStats("ewm-main-service", uri, hits);
+    }
+}
@@ -0,0 +1,241 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import ru.practicum.dto.EndpointHit;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HitBatcherTest {
+    private final StatsClient statsClient = mock(StatsClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private HitSpool spool;
+    private HitBatcher batcher;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void stop() throws Exception {
+        if (batcher != null) {
+            batcher.stop();
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Test
+    void dropPolicyRejectsHitsOnceTheQueueIsFull() {
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                2, 10, 10_000, "drop", 10, 1000, 1, 1);
+
+        assertTrue(batcher.submit(hit("/events/1")));
+        assertTrue(batcher.submit(hit("/events/2")));
+        assertFalse(batcher.submit(hit("/events/3")));
+
+        assertEquals(2, batcher.getQueued());
+        assertEquals(1.0, meterRegistry.counter("stats.client.hits.dropped").count());
+    }
+
+    @Test
+    void blockPolicyWaitsForRoomUpToTheTimeout() {
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                1, 10, 10_000, "block", 20, 1000, 1, 1);
+        batcher.submit(hit("/events/1"));
+
+        long started = System.nanoTime();
+        assertFalse(batcher.submit(hit("/events/2")));
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1.0, meterRegistry.counter("stats.client.hits.dropped").count());
+    }
+
+    @Test
+    void sendsAFullBatchWithoutWaitingForTheInterval() {
+        recordSends();
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                100, 2, 60_000, "drop", 10, 1000, 1, 1);
+        batcher.start();
+
+        batcher.submit(hit("/events/1"));
+        batcher.submit(hit("/events/2"));
+
+        await(() -> sent.size() == 2);
+    }
+
+    @Test
+    void flushesQueuedHitsOnShutdown() throws InterruptedException {
+        recordSends();
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                100, 10, 60_000, "drop", 10, 1000, 1, 1);
+        batcher.start();
+        batcher.submit(hit("/events/1"));
+        batcher.submit(hit("/events/2"));
+
+        batcher.stop();
+
+        assertEquals(List.of("/events/1", "/events/2"), sent);
+        assertFalse(batcher.submit(hit("/events/3")));
+    }
+
+    @Test
+    void submitAndFlushCompletesOnceTheHitWasSent() throws Exception {
+        recordSends();
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                100, 10, 60_000, "drop", 10, 1000, 1, 1);
+        batcher.start();
+        batcher.submit(hit("/events/1"));
+
+        batcher.submitAndFlush(hit("/events/2")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("/events/1", "/events/2"), sent);
+    }
+
+    @Test
+    void submitAndFlushCompletesNormallyWhenSendingFails() throws Exception {
+        doAnswer(invocation -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }).when(statsClient).hitAll(anyList());
+        batcher = new HitBatcher(statsClient, Optional.empty(), meterRegistry,
+                100, 10, 60_000, "drop", 10, 1000, 1, 1);
+        batcher.start();
+
+        batcher.submitAndFlush(hit("/events/1")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1.0, meterRegistry.counter("stats.client.hits.failed").count());
+    }
+
+    @Test
+    void spoolsBatchesTheServerCannotTakeForNow() {
+        doAnswer(invocation -> {
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+        }).when(statsClient).hitAll(anyList());
+        batcher = batcher(openSpool());
+        batcher.start();
+
+        batcher.submit(hit("/events/1"));
+
+        await(() -> !spool.isEmpty());
+        assertEquals(0.0, meterRegistry.counter("stats.client.hits.failed").count());
+    }
+
+    @Test
+    void dropsLiveBatchesTheServerRejectsInsteadOfSpoolingThem() {
+        doAnswer(invocation -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }).when(statsClient).hitAll(anyList());
+        batcher = batcher(openSpool());
+        batcher.start();
+
+        batcher.submit(hit("/events/1"));
+
+        await(() -> meterRegistry.counter("stats.client.hits.failed").count() == 1.0);
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    void replayDropsARejectedBatchAndMovesOnToTheNext() {
+        recordSends();
+        openSpool();
+        spool.append(List.of(hit("bad"), hit("bad")));
+        spool.append(List.of(hit("/events/1")));
+        batcher = batcher(spool);
+
+        batcher.start();
+
+        await(() -> spool.isEmpty());
+        assertEquals(List.of("/events/1"), sent);
+        assertEquals(1.0, meterRegistry.counter("stats.client.hits.replayed").count());
+        assertEquals(2.0, meterRegistry.counter("stats.client.hits.failed").count());
+    }
+
+    @Test
+    void replayKeepsABatchAfterARetryableFailure() {
+        List<Integer> attempts = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            attempts.add(1);
+            if (attempts.size() == 1) {
+                throw new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS);
+            }
+            List<EndpointHit> hits = invocation.getArgument(0);
+            hits.forEach(hit -> sent.add(hit.getUri()));
+            return null;
+        }).when(statsClient).hitAll(anyList());
+        openSpool();
+        spool.append(List.of(hit("/events/1")));
+        batcher = batcher(spool);
+
+        batcher.start();
+
+        await(() -> spool.isEmpty());
+        assertEquals(List.of("/events/1"), sent);
+        assertEquals(0.0, meterRegistry.counter("stats.client.hits.failed").count());
+    }
+
+    private HitSpool openSpool() {
+        spool = new HitSpool(directory.toString(), 64 * 1024, 1024 * 1024, meterRegistry);
+        return spool;
+    }
+
+    private HitBatcher batcher(HitSpool hitSpool) {
+        return new HitBatcher(statsClient, Optional.ofNullable(hitSpool), meterRegistry,
+                100, 10, 10, "drop", 10, 1000, 1, 1);
+    }
+
+    private void recordSends() {
+        doAnswer(invocation -> {
+            List<EndpointHit> hits = invocation.getArgument(0);
+            if (hits.stream().anyMatch(hit -> hit.getUri().equals("bad"))) {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }
+            hits.forEach(hit -> sent.add(hit.getUri()));
+            return null;
+        }).when(statsClient).hitAll(anyList());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 s");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+    }
+
+    private static EndpointHit hit(String uri) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.of(2024, 5, 1, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.dto.EndpointHit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitSpoolTest {
+    private static final long SEGMENT_BYTES = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void peekReturnsTheSameBatchUntilCommitted() throws IOException {
+        HitSpool spool = open(1024 * 1024);
+        spool.append(batch("a", 2));
+        spool.append(batch("b", 3));
+
+        assertEquals(List.of("a0", "a1"), hitIds(spool.peek()));
+        assertEquals(List.of("a0", "a1"), hitIds(spool.peek()));
+
+        spool.commit();
+        assertEquals(List.of("b0", "b1", "b2"), hitIds(spool.peek()));
+
+        spool.commit();
+        assertNull(spool.peek());
+        assertTrue(spool.isEmpty());
+        spool.close();
+    }
+
+    @Test
+    void commitWithoutPeekDoesNothing() throws IOException {
+        HitSpool spool = open(1024 * 1024);
+        spool.append(batch("a", 1));
+
+        spool.commit();
+
+        assertEquals(List.of("a0"), hitIds(spool.peek()));
+        spool.close();
+    }
+
+    @Test
+    void replaysPartlyDeliveredSegmentFromTheStartAfterRestart() throws IOException {
+        HitSpool spool = open(1024 * 1024);
+        spool.append(batch("a", 1));
+        spool.append(batch("b", 1));
+        spool.peek();
+        spool.commit();
+        spool.close();
+
+        HitSpool reopened = open(1024 * 1024);
+
+        assertFalse(reopened.isEmpty());
+        assertEquals(List.of("a0"), hitIds(reopened.peek()));
+        reopened.commit();
+        assertEquals(List.of("b0"), hitIds(reopened.peek()));
+        reopened.commit();
+        assertNull(reopened.peek());
+        assertTrue(reopened.isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void replayedSegmentsAreDeleted() throws IOException {
+        HitSpool spool = open(1024 * 1024);
+        for (int i = 0; i < 20; i++) {
+            spool.append(batch("s" + i + "-", 5));
+        }
+        assertTrue(segmentCount() > 1);
+
+        while (spool.peek() != null) {
+            spool.commit();
+        }
+
+        assertTrue(spool.isEmpty());
+        assertTrue(segmentCount() <= 1);
+        spool.close();
+    }
+
+    @Test
+    void dropsOldestSegmentsWhenFull() throws IOException {
+        HitSpool spool = open(3 * SEGMENT_BYTES);
+        for (int i = 0; i < 40; i++) {
+            assertTrue(spool.append(batch("s" + i + "-", 5)));
+        }
+
+        assertTrue(spool.getTotalBytes() <= 3 * SEGMENT_BYTES);
+        List<EndpointHit> oldest = spool.peek();
+        assertFalse(hitIds(oldest).contains("s0-0"));
+        spool.close();
+    }
+
+    private HitSpool open(long maxBytes) {
+        return new HitSpool(directory.toString(), SEGMENT_BYTES, maxBytes, new SimpleMeterRegistry());
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static List<EndpointHit> batch(String prefix, int size) {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            hits.add(EndpointHit.builder()
+                    .hitId(prefix + i)
+                    .app("ewm-main-service")
+                    .uri("/events/" + i)
+                    .ip("10.0.0." + i)
+                    .timestamp(LocalDateTime.of(2024, 5, 1, 12, 0).plusSeconds(i))
+                    .build());
+        }
+        return hits;
+    }
+
+    private static List<String> hitIds(List<EndpointHit> hits) {
+        return hits.stream().map(EndpointHit::getHitId).toList();
+    }
+}
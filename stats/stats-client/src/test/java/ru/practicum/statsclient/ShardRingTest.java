@@ -0,0 +1,88 @@
+package ru.practicum.statsclient;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.ViewStats;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRingTest {
+    private static final List<String> SERVERS = List.of("http://s1:9090", "http://s2:9090", "http://s3:9090");
+
+    @Test
+    void fallsBackToServerUrlWithoutShards() {
+        ShardRing ring = ShardRing.of("http://stats:9090", List.of(" ", ""));
+
+        assertTrue(ring.isSingle());
+        assertEquals("http://stats:9090", ring.serverFor("/events/1"));
+    }
+
+    @Test
+    void rejectsEmptyServerList() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardRing(List.of()));
+    }
+
+    @Test
+    void spreadsUrisEvenly() {
+        ShardRing ring = new ShardRing(SERVERS);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            owned.merge(ring.serverFor("/events/" + i), 1, Integer::sum);
+        }
+
+        assertEquals(SERVERS.size(), owned.size());
+        owned.forEach((server, count) -> assertTrue(count > 6_000, server + " owns only " + count + " URIs"));
+    }
+
+    @Test
+    void addingAServerOnlyMovesUrisToIt() {
+        ShardRing before = new ShardRing(SERVERS);
+        ShardRing after = new ShardRing(List.of("http://s1:9090", "http://s2:9090", "http://s3:9090",
+                "http://s4:9090"));
+
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String uri = "/events/" + i;
+            if (!before.serverFor(uri).equals(after.serverFor(uri))) {
+                assertEquals("http://s4:9090", after.serverFor(uri));
+                moved++;
+            }
+        }
+        assertTrue(moved > 1_000 && moved < 4_000, moved + " of 10000 URIs moved");
+    }
+
+    @Test
+    void routesExactUrisToTheirOwnerAndPrefixesEverywhere() {
+        ShardRing ring = new ShardRing(SERVERS);
+
+        Map<String, List<String>> routed = ring.route(List.of("/events/1", "/events/*"));
+
+        assertEquals(SERVERS.size(), routed.size());
+        routed.forEach((server, uris) -> assertTrue(uris.contains("/events/*")));
+        assertTrue(routed.get(ring.serverFor("/events/1")).contains("/events/1"));
+    }
+
+    @Test
+    void routesUnfilteredQueryToEveryServer() {
+        Map<String, List<String>> routed = new ShardRing(SERVERS).route(null);
+
+        assertEquals(SERVERS, List.copyOf(routed.keySet()));
+        routed.values().forEach(uris -> assertNull(uris));
+    }
+
+    @Test
+    void mergeAddsUpRowsAndSortsByHits() {
+        List<ViewStats> merged = ShardRing.merge(List.of(
+                List.of(new ViewStats("app", "/events/1", 3L), new ViewStats("app", "/events/2", 1L)),
+                List.of(new ViewStats("app", "/events/1", 2L), new ViewStats("app", "/events/3", 4L))));
+
+        assertEquals(List.of("/events/1", "/events/3", "/events/2"), merged.stream().map(ViewStats::getUri).toList());
+        assertEquals(5L, merged.get(0).getHits());
+    }
+}
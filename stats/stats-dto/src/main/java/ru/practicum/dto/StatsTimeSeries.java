@@ -0,0 +1,40 @@
+package ru.practicum.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Response of {@code GET /stats/timeseries} in columnar form: {@code counts[i]} of every series belongs to
+ * the bucket starting at {@code timestamps[i]}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StatsTimeSeries {
+    private String interval;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @JsonDeserialize(contentUsing = LocalDateTimeDeserializer.class)
+    private List<LocalDateTime> timestamps;
+
+    private List<Series> series;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Series {
+        private String app;
+        private String uri;
+        private long[] counts;
+    }
+}
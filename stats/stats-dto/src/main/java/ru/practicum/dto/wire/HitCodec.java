@@ -0,0 +1,209 @@
+package ru.practicum.dto.wire;
+
+import ru.practicum.dto.EndpointHit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of hits, an alternative to JSON for {@code /hit} and {@code /hit/batch}.
+ * <p>
+ * A message is a magic byte and version, the hit count as a varint, then per hit: hit id, app, uri, ip and
+ * timestamp. Strings are a varint of length + 1 followed by UTF-8 bytes, with 0 standing for {@code null}.
+ * App and uri go through a per-message table: a varint reference to an earlier value, or 0 and a new string.
+ * Timestamps are epoch seconds in UTC, zigzag-encoded as the delta to the previous hit, so a batch of
+ * hits from the same service mostly costs a few bytes of hit id and ip each.
+ */
+public final class HitCodec {
+    public static final String MEDIA_TYPE = "application/x-stats-hits";
+
+    private static final int MAGIC = 0x48;
+    private static final int VERSION = 1;
+    private static final int MAX_TABLE_SIZE = 4096;
+
+    private HitCodec() {
+    }
+
+    public static byte[] encode(List<EndpointHit> hits) {
+        Writer writer = new Writer(32 + hits.size() * 64);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeVarint(hits.size());
+        Map<String, Integer> table = new HashMap<>();
+        long previous = 0;
+        for (EndpointHit hit : hits) {
+            if (hit.getTimestamp() == null) {
+                throw new IllegalArgumentException("Hit timestamp is required");
+            }
+            writer.writeString(hit.getHitId());
+            writer.writeReference(hit.getApp(), table);
+            writer.writeReference(hit.getUri(), table);
+            writer.writeString(hit.getIp());
+            long epochSecond = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            writer.writeVarint(zigzag(epochSecond - previous));
+            previous = epochSecond;
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<EndpointHit> decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        if (reader.readByte() != MAGIC) {
+            throw new IllegalArgumentException("Not a hit message");
+        }
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported hit message version " + version);
+        }
+        long count = reader.readVarint();
+        // Every hit takes at least five bytes, which bounds the count a well-formed message can claim
+        if (count < 0 || count > bytes.length / 5) {
+            throw new IllegalArgumentException("Hit count " + count + " exceeds message size");
+        }
+        List<EndpointHit> hits = new ArrayList<>((int) count);
+        List<String> table = new ArrayList<>();
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            EndpointHit hit = new EndpointHit();
+            hit.setHitId(reader.readString());
+            hit.setApp(reader.readReference(table));
+            hit.setUri(reader.readReference(table));
+            hit.setIp(reader.readString());
+            previous += unzigzag(reader.readVarint());
+            hit.setTimestamp(LocalDateTime.ofEpochSecond(previous, 0, ZoneOffset.UTC));
+            hits.add(hit);
+        }
+        if (reader.position != bytes.length) {
+            throw new IllegalArgumentException("Trailing bytes after " + count + " hits");
+        }
+        return hits;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buffer, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void writeReference(String value, Map<String, Integer> table) {
+            Integer index = value != null ? table.get(value) : null;
+            if (index != null) {
+                writeVarint(index + 1L);
+                return;
+            }
+            writeVarint(0);
+            writeString(value);
+            if (value != null && table.size() < MAX_TABLE_SIZE) {
+                table.put(value, table.size());
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated hit message");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in hit message");
+        }
+
+        String readString() {
+            long length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            if (length < 0 || length - 1 > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated hit message");
+            }
+            String value = new String(bytes, position, (int) (length - 1), StandardCharsets.UTF_8);
+            position += (int) (length - 1);
+            return value;
+        }
+
+        String readReference(List<String> table) {
+            long reference = readVarint();
+            if (reference == 0) {
+                String value = readString();
+                if (value != null && table.size() < MAX_TABLE_SIZE) {
+                    table.add(value);
+                }
+                return value;
+            }
+            if (reference < 0 || reference > table.size()) {
+                throw new IllegalArgumentException("Unknown string reference " + reference + " in hit message");
+            }
+            return table.get((int) reference - 1);
+        }
+    }
+}
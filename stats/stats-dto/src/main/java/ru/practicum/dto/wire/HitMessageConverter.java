@@ -0,0 +1,112 @@
+package ru.practicum.dto.wire;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+import ru.practicum.dto.EndpointHit;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes {@link HitCodec} bodies as a single {@link EndpointHit} or a {@code List<EndpointHit>}.
+ * <p>
+ * It writes only when {@code application/x-stats-hits} is asked for by name, as the content type of a request
+ * or in an {@code Accept} header. It never offers the type while negotiating {@code Accept: *}{@code /*} or a
+ * missing {@code Accept}, so every other body, {@code ViewStats} lists included, stays JSON.
+ */
+public class HitMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(HitCodec.MEDIA_TYPE);
+
+    public HitMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return isHitType(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isHitType(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype()
+                && MEDIA_TYPE.isCompatibleWith(mediaType) && isHitType(type != null ? type : clazz);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return canWrite(clazz, clazz, mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readInternal(ResolvableType.forType(type).toClass(), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        List<EndpointHit> hits;
+        try {
+            hits = HitCodec.decode(StreamUtils.copyToByteArray(inputMessage.getBody()));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new HttpMessageNotReadableException("Malformed hit message: " + e.getMessage(), e, inputMessage);
+        }
+        if (!EndpointHit.class.isAssignableFrom(clazz)) {
+            return hits;
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Expected a single hit, got " + hits.size(), inputMessage);
+        }
+        return hits.get(0);
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        List<EndpointHit> hits = new ArrayList<>();
+        if (body instanceof EndpointHit hit) {
+            hits.add(hit);
+        } else {
+            for (Object element : (List<?>) body) {
+                if (!(element instanceof EndpointHit hit)) {
+                    throw new HttpMessageNotWritableException("Only hits can be written as " + MEDIA_TYPE);
+                }
+                hits.add(hit);
+            }
+        }
+        try {
+            outputMessage.getBody().write(HitCodec.encode(hits));
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotWritableException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A hit or a list of hits. A raw list, as a client's request body is typed, is checked element by element
+     * when written.
+     */
+    private static boolean isHitType(Type type) {
+        ResolvableType resolved = ResolvableType.forType(type);
+        Class<?> raw = resolved.toClass();
+        if (EndpointHit.class.isAssignableFrom(raw)) {
+            return true;
+        }
+        if (!List.class.isAssignableFrom(raw)) {
+            return false;
+        }
+        Class<?> element = resolved.asCollection().getGeneric(0).resolve();
+        return element == null || EndpointHit.class.isAssignableFrom(element);
+    }
+}
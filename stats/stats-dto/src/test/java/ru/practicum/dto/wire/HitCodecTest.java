@@ -0,0 +1,131 @@
+package ru.practicum.dto.wire;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HitCodecTest {
+
+    @Test
+    void roundTripKeepsEveryField() {
+        List<EndpointHit> hits = List.of(
+                hit("a1", "ewm-main-service", "/events/1", "10.0.0.1", LocalDateTime.of(2024, 5, 1, 12, 0, 5)),
+                hit(null, "ewm-main-service", "/events/2", "2001:db8::1", LocalDateTime.of(2024, 5, 1, 11, 59, 0)),
+                hit("a3", "other-service", "/events/1", null, LocalDateTime.of(1970, 1, 1, 0, 0)));
+
+        List<EndpointHit> decoded = HitCodec.decode(HitCodec.encode(hits));
+
+        assertEquals(hits.size(), decoded.size());
+        for (int i = 0; i < hits.size(); i++) {
+            assertEquals(hits.get(i).getHitId(), decoded.get(i).getHitId());
+            assertEquals(hits.get(i).getApp(), decoded.get(i).getApp());
+            assertEquals(hits.get(i).getUri(), decoded.get(i).getUri());
+            assertEquals(hits.get(i).getIp(), decoded.get(i).getIp());
+            assertEquals(hits.get(i).getTimestamp(), decoded.get(i).getTimestamp());
+        }
+        assertNull(decoded.get(1).getHitId());
+    }
+
+    @Test
+    void emptyBatchRoundTrips() {
+        assertEquals(List.of(), HitCodec.decode(HitCodec.encode(List.of())));
+    }
+
+    @Test
+    void repeatedStringsAreSentOnce() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 12, 0);
+        EndpointHit first = hit("a1", "ewm-main-service", "/events/1", "10.0.0.1", timestamp);
+        EndpointHit second = hit("a2", "ewm-main-service", "/events/1", "10.0.0.1", timestamp);
+
+        int one = HitCodec.encode(List.of(first)).length;
+        int two = HitCodec.encode(List.of(first, second)).length;
+
+        // Hit id, two one-byte references, ip and a zero timestamp delta
+        assertEquals(3 + 2 + 9 + 1, two - one);
+    }
+
+    @Test
+    void rejectsHitWithoutTimestamp() {
+        assertThrows(IllegalArgumentException.class, () ->
+                HitCodec.encode(List.of(hit("a1", "app", "/", "10.0.0.1", null))));
+    }
+
+    @Test
+    void rejectsWrongMagicAndVersion() {
+        byte[] bytes = encodedSample();
+
+        byte[] wrongMagic = bytes.clone();
+        wrongMagic[0] = '{';
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(wrongMagic));
+
+        byte[] wrongVersion = bytes.clone();
+        wrongVersion[1] = 2;
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(wrongVersion));
+    }
+
+    @Test
+    void rejectsTruncatedMessage() {
+        byte[] bytes = encodedSample();
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(truncated));
+        }
+    }
+
+    @Test
+    void rejectsTrailingBytes() {
+        byte[] bytes = encodedSample();
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(Arrays.copyOf(bytes, bytes.length + 1)));
+    }
+
+    @Test
+    void rejectsCountLargerThanTheMessage() {
+        // Magic, version and a varint count of 2^28
+        byte[] bytes = {0x48, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(bytes));
+    }
+
+    @Test
+    void rejectsUnknownStringReference() {
+        // One hit: null hit id, then a reference to table entry 5 while the table is empty
+        byte[] bytes = {0x48, 1, 1, 0, 5, 0, 0, 0, 0, 0};
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(bytes));
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        byte[] bytes = new byte[16];
+        bytes[0] = 0x48;
+        bytes[1] = 1;
+        Arrays.fill(bytes, 2, bytes.length, (byte) 0xFF);
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(bytes));
+    }
+
+    private static byte[] encodedSample() {
+        return HitCodec.encode(List.of(
+                hit("a1", "ewm-main-service", "/events/1", "10.0.0.1", LocalDateTime.of(2024, 5, 1, 12, 0)),
+                hit("a2", "ewm-main-service", "/events/2", "10.0.0.2", LocalDateTime.of(2024, 5, 1, 12, 1))));
+    }
+
+    private static EndpointHit hit(String hitId, String app, String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .hitId(hitId)
+                .app(app)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.dto.wire.HitMessageConverter;
+
+@Configuration
+public class HitWireFormatConfig {
+
+    // Picked up by Boot's HttpMessageConverters ahead of Jackson; it only writes when the hit type is asked for
+    @Bean
+    public HitMessageConverter hitMessageConverter() {
+        return new HitMessageConverter();
+    }
+}
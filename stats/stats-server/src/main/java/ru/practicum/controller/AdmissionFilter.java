@@ -0,0 +1,165 @@
+package ru.practicum.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.practicum.service.HitWriteBuffer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Separate bulkheads for {@code /hit} and {@code /stats} requests, so an ingestion spike cannot take the threads
+ * and connections that page renders in main-service wait on.
+ * <p>
+ * Writes are refused with 429 and {@code Retry-After} at once while the write-behind queue is above its high-water
+ * mark or a thread is waiting for a database connection. Otherwise each lane waits briefly for a permit before
+ * turning the request away; reads have the larger lane and the longer wait.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.admission.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AdmissionFilter extends OncePerRequestFilter {
+    private final Semaphore writePermits;
+    private final Semaphore readPermits;
+    private final long writeWaitMillis;
+    private final long readWaitMillis;
+    private final double queueHighWater;
+    private final String retryAfterSeconds;
+    private final Optional<HitWriteBuffer> writeBuffer;
+    private final DataSource dataSource;
+    private final Counter rejectedWrites;
+    private final Counter rejectedReads;
+
+    public AdmissionFilter(Optional<HitWriteBuffer> writeBuffer,
+                           DataSource dataSource,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.admission.write-permits:4}") int writePermits,
+                           @Value("${stats.admission.read-permits:32}") int readPermits,
+                           @Value("${stats.admission.write-wait-ms:100}") long writeWaitMillis,
+                           @Value("${stats.admission.read-wait-ms:500}") long readWaitMillis,
+                           @Value("${stats.admission.queue-high-water:0.8}") double queueHighWater,
+                           @Value("${stats.admission.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.writePermits = new Semaphore(writePermits);
+        this.readPermits = new Semaphore(readPermits);
+        this.writeWaitMillis = writeWaitMillis;
+        this.readWaitMillis = readWaitMillis;
+        this.queueHighWater = queueHighWater;
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+        this.writeBuffer = writeBuffer;
+        this.dataSource = dataSource;
+        this.rejectedWrites = meterRegistry.counter("stats.admission.rejected", "lane", "write");
+        this.rejectedReads = meterRegistry.counter("stats.admission.rejected", "lane", "read");
+        log.info("Admission control enabled: writePermits={}, readPermits={}, writeWait={}ms, readWait={}ms",
+                writePermits, readPermits, writeWaitMillis, readWaitMillis);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !path.startsWith("/hit") && !path.startsWith("/stats");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean write = request.getRequestURI().startsWith("/hit");
+        Semaphore permits = write ? writePermits : readPermits;
+        if (write ? !admitWrite() : !acquire(readPermits, readWaitMillis)) {
+            (write ? rejectedWrites : rejectedReads).increment();
+            reject(response, write ? "Hit ingestion is overloaded" : "Stats queries are overloaded");
+            return;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // Streamed /stats bodies are written after the filter returns, so they keep their permit until done
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private boolean admitWrite() {
+        if (writeBuffer.isPresent()
+                && writeBuffer.get().getQueueDepth() >= writeBuffer.get().getCapacity() * queueHighWater) {
+            return false;
+        }
+        if (threadsAwaitingConnection() > 0) {
+            return false;
+        }
+        return acquire(writePermits, writeWaitMillis);
+    }
+
+    private boolean acquire(Semaphore permits, long waitMillis) {
+        try {
+            return permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int threadsAwaitingConnection() {
+        if (dataSource instanceof HikariDataSource hikari) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        }
+        return 0;
+    }
+
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private record ReleasingListener(Runnable release) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
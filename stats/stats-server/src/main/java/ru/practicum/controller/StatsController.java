@@ -1,13 +1,26 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsQuery;
+import ru.practicum.dto.StatsTimeSeries;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.service.IngestOverloadedException;
+import ru.practicum.service.IngestUnavailableException;
 import ru.practicum.service.StatsService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +29,10 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class StatsController {
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stats.admission.retry-after-seconds:1}")
+    private int retryAfterSeconds;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -23,18 +40,130 @@ public class StatsController {
         statsService.saveHit(hit);
     }
 
+    @PostMapping("/hit/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void saveHits(@RequestBody List<EndpointHit> hits) {
+        statsService.saveHits(hits);
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<?> getStats(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
-            @RequestParam(defaultValue = "false") Boolean unique) {
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean exact) {
 
         if (start.isAfter(end)) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", "Start date must be before end date"));
         }
 
-        return ResponseEntity.ok(statsService.getStats(start, end, uris, unique));
+        return ResponseEntity.ok(statsService.getStats(start, end, uris, unique, exact));
+    }
+
+    @GetMapping("/stats/top")
+    public ResponseEntity<?> getTopStats(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(required = false) String app,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean exact,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Start date must be before end date"));
+        }
+        if (limit <= 0 || limit > StatsService.MAX_TOP_LIMIT) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Limit must be between 1 and " + StatsService.MAX_TOP_LIMIT));
+        }
+
+        return ResponseEntity.ok(statsService.getTopStats(start, end, uris, app, unique, exact, limit));
+    }
+
+    @GetMapping("/stats/timeseries")
+    public StatsTimeSeries getTimeSeries(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(required = false) String app,
+            @RequestParam(defaultValue = "hour") String interval) {
+        return statsService.getTimeSeries(start, end, uris, app, interval);
+    }
+
+    @PostMapping("/stats/query")
+    public ResponseEntity<?> queryStats(@RequestBody StatsQuery query) {
+        if (query.getStart() == null || query.getEnd() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Start and end dates are required"));
+        }
+        if (query.getStart().isAfter(query.getEnd())) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Start date must be before end date"));
+        }
+
+        return ResponseEntity.ok(statsService.queryStats(query.getStart(), query.getEnd(), query.getUris(),
+                query.getUnique(), query.getExact()));
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<?> streamStats(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") Boolean unique,
+            @RequestParam(defaultValue = "false") Boolean exact) {
+
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", "Start date must be before end date"));
+        }
+        try {
+            statsService.checkStats(start, end, unique, exact);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", e.getMessage()));
+        }
+
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writerFor(ViewStats.class)
+                    .withRootValueSeparator("\n")
+                    .writeValues(out)) {
+                statsService.streamStats(start, end, uris, unique, exact, stat -> {
+                    try {
+                        writer.write(stat);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @ExceptionHandler(IngestOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleOverloaded(IngestOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IngestUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleUnavailable(IngestUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,4 @@
+package ru.practicum.repository;
+
+public record AppUri(String app, String uri) {
+}
@@ -0,0 +1,6 @@
+package ru.practicum.repository;
+
+import java.time.LocalDateTime;
+
+public record BucketCount(String app, String uri, LocalDateTime bucket, long hits) {
+}
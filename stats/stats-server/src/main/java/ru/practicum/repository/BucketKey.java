@@ -0,0 +1,18 @@
+package ru.practicum.repository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Aggregate row key in primary key order, so sorted keys give every writer the same row lock order.
+ */
+record BucketKey(String uri, LocalDateTime bucket, String app) implements Comparable<BucketKey> {
+    private static final Comparator<BucketKey> ORDER = Comparator.comparing(BucketKey::uri)
+            .thenComparing(BucketKey::bucket)
+            .thenComparing(BucketKey::app);
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.repository;
+
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+
+public record BucketSketch(String app, String uri, LocalDateTime bucket, HyperLogLog sketch) {
+}
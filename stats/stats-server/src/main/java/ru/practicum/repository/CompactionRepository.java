@@ -0,0 +1,123 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tier watermarks in {@code compaction_watermarks} and the statements that move data below them. The
+ * watermarks are cached and refreshed every minute, so instances that do not run the job catch up quickly.
+ */
+@Repository
+public class CompactionRepository {
+    private static final String FOLD_DAY_ROLLUP =
+            "INSERT INTO hits_rollup_day (app, uri, bucket, hits) " +
+            "SELECT a.name, u.uri, ?, r.hits FROM (SELECT app_id, uri_id, COUNT(*) AS hits FROM endpoint_hits " +
+            "WHERE timestamp >= ? AND timestamp < ? GROUP BY app_id, uri_id) r " +
+            "JOIN hit_apps a ON a.id = r.app_id JOIN hit_uris u ON u.id = r.uri_id " +
+            "ON CONFLICT (uri, bucket, app) DO UPDATE " +
+            "SET hits = GREATEST(hits_rollup_day.hits, EXCLUDED.hits)";
+    private static final String DAY_IPS =
+            "SELECT a.name AS app, u.uri, host(r.ip) AS ip FROM (SELECT DISTINCT app_id, uri_id, ip " +
+            "FROM endpoint_hits WHERE timestamp >= ? AND timestamp < ?) r " +
+            "JOIN hit_apps a ON a.id = r.app_id JOIN hit_uris u ON u.id = r.uri_id";
+    private static final String ADVANCE =
+            "INSERT INTO compaction_watermarks (tier, available_from) VALUES (?, ?) " +
+            "ON CONFLICT (tier) DO UPDATE " +
+            "SET available_from = GREATEST(compaction_watermarks.available_from, EXCLUDED.available_from)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitSketchRepository hitSketchRepository;
+    private volatile RetentionWatermarks watermarks = RetentionWatermarks.NONE;
+
+    public CompactionRepository(JdbcTemplate jdbcTemplate, HitSketchRepository hitSketchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hitSketchRepository = hitSketchRepository;
+    }
+
+    public RetentionWatermarks getWatermarks() {
+        return watermarks;
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelay = 60_000)
+    public void refreshWatermarks() {
+        Map<String, LocalDateTime> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT tier, available_from FROM compaction_watermarks", rs ->
+                stored.put(rs.getString("tier"), rs.getTimestamp("available_from").toLocalDateTime()));
+        watermarks = new RetentionWatermarks(
+                stored.getOrDefault(Granularity.RAW.name(), LocalDateTime.MIN),
+                stored.getOrDefault(Granularity.MINUTE.name(), LocalDateTime.MIN),
+                stored.getOrDefault(Granularity.HOUR.name(), LocalDateTime.MIN));
+    }
+
+    public LocalDate findOldestRawDay() {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM endpoint_hits", Timestamp.class);
+        return oldest != null ? oldest.toLocalDateTime().toLocalDate() : null;
+    }
+
+    /**
+     * Makes sure the day rollup and sketch hold every raw hit of {@code day}, then moves the raw watermark past it.
+     * Both only ever grow (GREATEST and sketch union), so hits ingested concurrently are never lost.
+     */
+    @Transactional
+    public void foldRawDay(LocalDate day) {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        jdbcTemplate.update(FOLD_DAY_ROLLUP, from, from, to);
+        foldDaySketches(day);
+        advance(Granularity.RAW, day.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Days whose sketches have to be folded again from raw hits: migrated by {@code schema.sql}, or queued by
+     * {@link HitSketchRepository#queueRepair} after a restart.
+     */
+    public List<LocalDate> findSketchBackfillDays() {
+        return jdbcTemplate.queryForList("SELECT day FROM sketch_backfill_days ORDER BY day", LocalDate.class);
+    }
+
+    @Transactional
+    public void backfillSketchDay(LocalDate day) {
+        foldDaySketches(day);
+        jdbcTemplate.update("DELETE FROM sketch_backfill_days WHERE day = ?", day);
+    }
+
+    private void foldDaySketches(LocalDate day) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        jdbcTemplate.query(DAY_IPS, rs -> {
+            BucketKey key = new BucketKey(rs.getString("uri"), day.atStartOfDay(), rs.getString("app"));
+            sketches.computeIfAbsent(key, k -> hitSketchRepository.newSketch())
+                    .add(IpAddresses.normalize(rs.getString("ip")));
+        }, Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        hitSketchRepository.mergeAll(sketches);
+    }
+
+    public void advance(Granularity tier, LocalDateTime availableFrom) {
+        jdbcTemplate.update(ADVANCE, tier.name(), Timestamp.valueOf(availableFrom));
+    }
+
+    /**
+     * Deletes at most {@code limit} rows below {@code before} from the tier's table, so each statement holds
+     * its locks only briefly.
+     */
+    public int deleteBefore(Granularity tier, LocalDateTime before, int limit) {
+        List<String> key = tier == Granularity.RAW ? List.of("id", "timestamp") : List.of("uri", "bucket", "app");
+        String table = tier == Granularity.RAW ? HitPartitionRepository.PARENT : tier.getTable();
+        String column = tier == Granularity.RAW ? "timestamp" : "bucket";
+        String columns = String.join(", ", key);
+        return jdbcTemplate.update("DELETE FROM " + table + " WHERE (" + columns + ") IN (SELECT " + columns +
+                " FROM " + table + " WHERE " + column + " < ? LIMIT ?)", Timestamp.valueOf(before), limit);
+    }
+}
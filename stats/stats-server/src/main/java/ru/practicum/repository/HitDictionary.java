@@ -0,0 +1,90 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns app names and URIs into {@code hit_apps} and {@code hit_uris} and caches their ids in process.
+ * New entries commit in their own transaction, so a cached id never outlives a rolled back insert.
+ */
+@Repository
+public class HitDictionary {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNew;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> appNames = new ConcurrentHashMap<>();
+    private final Map<Integer, String> uriNames = new ConcurrentHashMap<>();
+
+    public HitDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int appId(String app) {
+        return lookup(appIds, appNames, "hit_apps", "name", app);
+    }
+
+    public int uriId(String uri) {
+        return lookup(uriIds, uriNames, "hit_uris", "uri", uri);
+    }
+
+    public String appName(int id) {
+        return reverseLookup(appNames, "hit_apps", "name", id);
+    }
+
+    public String uriName(int id) {
+        return reverseLookup(uriNames, "hit_uris", "uri", id);
+    }
+
+    /**
+     * Caches a pair read from the database elsewhere, e.g. while joining hits with the dictionaries.
+     */
+    public void remember(int appId, String app, int uriId, String uri) {
+        appIds.putIfAbsent(app, appId);
+        appNames.putIfAbsent(appId, app);
+        uriIds.putIfAbsent(uri, uriId);
+        uriNames.putIfAbsent(uriId, uri);
+    }
+
+    private int lookup(Map<String, Integer> cache, Map<Integer, String> names, String table, String column,
+                       String value) {
+        Integer id = cache.get(value);
+        if (id == null) {
+            id = intern(table, column, value);
+            cache.putIfAbsent(value, id);
+            names.putIfAbsent(id, value);
+        }
+        return id;
+    }
+
+    private String reverseLookup(Map<Integer, String> names, String table, String column, int id) {
+        String value = names.get(id);
+        if (value == null) {
+            value = jdbcTemplate.queryForObject("SELECT " + column + " FROM " + table + " WHERE id = ?",
+                    String.class, id);
+            names.putIfAbsent(id, value);
+        }
+        return value;
+    }
+
+    private int intern(String table, String column, String value) {
+        Integer id = requiresNew.execute(status -> {
+            jdbcTemplate.update("INSERT INTO " + table + " (" + column + ") VALUES (?) " +
+                    "ON CONFLICT (" + column + ") DO NOTHING", value);
+            return jdbcTemplate.queryForObject("SELECT id FROM " + table + " WHERE " + column + " = ?",
+                    Integer.class, value);
+        });
+        if (id == null) {
+            throw new IllegalStateException("Failed to intern " + column + " " + value);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Client hit ids accepted during the last {@code stats.dedup.window-hours}. The primary key of
+ * {@code ingested_hit_ids} decides which of two concurrent deliveries of the same hit wins; older ids are purged,
+ * so a retry arriving after the window is counted again.
+ */
+@Repository
+@Slf4j
+public class HitIdRegistry {
+    private static final String CLAIM =
+            "INSERT INTO ingested_hit_ids (hit_id) SELECT unnest(?::varchar[]) ON CONFLICT (hit_id) DO NOTHING " +
+            "RETURNING hit_id";
+    // The cutoff is taken from the database clock, which also stamps seen_at
+    private static final String PURGE =
+            "DELETE FROM ingested_hit_ids WHERE hit_id IN " +
+            "(SELECT hit_id FROM ingested_hit_ids WHERE seen_at < now() - make_interval(hours => ?) LIMIT ?)";
+    private static final int PURGE_BATCH = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int windowHours;
+    private final Counter duplicateCounter;
+
+    public HitIdRegistry(JdbcTemplate jdbcTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${stats.dedup.window-hours:24}") int windowHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.windowHours = windowHours;
+        this.duplicateCounter = meterRegistry.counter("stats.ingest.duplicates");
+    }
+
+    /**
+     * Records the ids in the current transaction and returns those not seen before; the rest are duplicates.
+     */
+    public Set<String> claim(Collection<String> hitIds) {
+        if (hitIds.isEmpty()) {
+            return Set.of();
+        }
+        List<String> claimed = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(CLAIM);
+            ps.setArray(1, con.createArrayOf("varchar", hitIds.toArray()));
+            return ps;
+        }, (rs, rowNum) -> rs.getString("hit_id"));
+        duplicateCounter.increment(hitIds.size() - claimed.size());
+        return new HashSet<>(claimed);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.dedup.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PURGE, windowHours, PURGE_BATCH);
+            total += deleted;
+        } while (deleted == PURGE_BATCH);
+        if (total > 0) {
+            log.debug("Purged {} hit ids older than {} hours", total, windowHours);
+        }
+    }
+}
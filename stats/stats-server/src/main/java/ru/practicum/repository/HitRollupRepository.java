@@ -0,0 +1,160 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Minute, hour and day hit counts. They are applied after the hits' own transaction commits, as deltas that one
+ * flush at a time merges into the tables in key order: callers arriving while a flush runs add their deltas and
+ * are served by the next one, so concurrent hits on a popular URI share a short transaction instead of queueing
+ * on its rows for the length of each other's, and no two flushes take row locks in a different order.
+ * <p>
+ * Callers return once their deltas are stored, so a read after an ingest sees it. Deltas that fail to store are
+ * kept for the next flush, which also runs every {@code stats.rollup.retry-interval-ms}. Deltas lost with the
+ * process are restored on startup from the raw hits of the last {@code stats.rollup.repair-days} days; rollups
+ * only ever grow to the raw counts there (GREATEST), so hits already counted are not counted twice.
+ */
+@Repository
+@Slf4j
+public class HitRollupRepository {
+    private static final List<Granularity> TIERS = List.of(Granularity.MINUTE, Granularity.HOUR, Granularity.DAY);
+    private static final String UPSERT =
+            "INSERT INTO %1$s (app, uri, bucket, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+    private static final String REPAIR =
+            "INSERT INTO %1$s (app, uri, bucket, hits) " +
+            "SELECT a.name, u.uri, r.bucket, r.hits FROM (SELECT app_id, uri_id, " +
+            "date_trunc('%2$s', timestamp) AS bucket, COUNT(*) AS hits FROM endpoint_hits " +
+            "WHERE timestamp >= ? GROUP BY app_id, uri_id, bucket) r " +
+            "JOIN hit_apps a ON a.id = r.app_id JOIN hit_uris u ON u.id = r.uri_id " +
+            "ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(%1$s.hits, EXCLUDED.hits)";
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int repairDays;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<Granularity, Map<BucketKey, Long>> pending = newDeltas();
+    private long pendingGeneration;
+    private volatile long storedGeneration = -1;
+
+    public HitRollupRepository(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${stats.rollup.repair-days:1}") int repairDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.repairDays = repairDays;
+    }
+
+    /**
+     * Runs before the server takes hits, so no delta of this process is counted by the repair as well.
+     */
+    @PostConstruct
+    public void repair() {
+        if (repairDays <= 0) {
+            return;
+        }
+        Timestamp from = Timestamp.valueOf(LocalDate.now().minusDays(repairDays).atStartOfDay());
+        try {
+            transactionTemplate.executeWithoutResult(status -> TIERS.forEach(tier ->
+                    jdbcTemplate.update(REPAIR.formatted(tier.getTable(), tier.name().toLowerCase()), from)));
+        } catch (RuntimeException e) {
+            log.warn("Failed to restore rollups from raw hits since {}: {}", from, e.getMessage());
+        }
+    }
+
+    /**
+     * Counts stored hits into the rollups. Call after the hits are committed.
+     */
+    public void addAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        long generation;
+        synchronized (this) {
+            for (Granularity tier : TIERS) {
+                Map<BucketKey, Long> deltas = pending.get(tier);
+                for (EndpointHit hit : hits) {
+                    deltas.merge(new BucketKey(hit.getUri(), tier.floor(hit.getTimestamp()), hit.getApp()), 1L,
+                            Long::sum);
+                }
+            }
+            generation = pendingGeneration;
+        }
+        flushLock.lock();
+        try {
+            if (storedGeneration < generation) {
+                flushLocked();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.rollup.retry-interval-ms:1000}")
+    @PreDestroy
+    public void flushPending() {
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        Map<Granularity, Map<BucketKey, Long>> deltas;
+        long generation;
+        synchronized (this) {
+            if (pending.values().stream().allMatch(Map::isEmpty)) {
+                return;
+            }
+            deltas = pending;
+            generation = pendingGeneration++;
+            pending = newDeltas();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> deltas.forEach(this::upsert));
+            storedGeneration = generation;
+        } catch (RuntimeException e) {
+            log.warn("Failed to store rollup deltas, keeping them for the next flush: {}", e.getMessage());
+            synchronized (this) {
+                deltas.forEach((tier, counts) ->
+                        counts.forEach((key, hits) -> pending.get(tier).merge(key, hits, Long::sum)));
+            }
+        }
+    }
+
+    private void upsert(Granularity tier, Map<BucketKey, Long> counts) {
+        List<Map.Entry<BucketKey, Long>> rows = new ArrayList<>(counts.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT.formatted(tier.getTable()), rows, BATCH_SIZE, (ps, row) -> {
+            ps.setString(1, row.getKey().app());
+            ps.setString(2, row.getKey().uri());
+            ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+            ps.setLong(4, row.getValue());
+        });
+    }
+
+    // Sorted keys, and the tiers always in the same order, give every flush the same row lock order
+    private static Map<Granularity, Map<BucketKey, Long>> newDeltas() {
+        Map<Granularity, Map<BucketKey, Long>> deltas = new EnumMap<>(Granularity.class);
+        TIERS.forEach(tier -> deltas.put(tier, new TreeMap<>()));
+        return deltas;
+    }
+}
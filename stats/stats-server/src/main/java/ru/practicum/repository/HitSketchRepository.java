@@ -0,0 +1,185 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day unique-IP sketches in {@code hits_sketch_day}. Ingested hits are folded into pending in-memory deltas,
+ * one per (app, uri, day), which are merged into the table every {@code stats.unique.flush-interval-ms} in a short
+ * transaction of their own, so writers never wait on each other's sketch row locks. Deltas not yet flushed when
+ * the instance dies are lost, so on startup the days since {@code stats.unique.repair-days} ago are queued for
+ * {@code CompactionJob} to fold again from the raw hits (a sketch union is idempotent). Until that has run,
+ * unique counts for those days may be low. Late hits for an earlier day are merged at once, since that day's
+ * sketches may already be cached.
+ */
+@Repository
+@Slf4j
+public class HitSketchRepository {
+    private static final String INSERT_EMPTY =
+            "INSERT INTO hits_sketch_day (app, uri, bucket, sketch) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri, bucket, app) DO NOTHING";
+    private static final String SELECT_FOR_UPDATE =
+            "SELECT sketch FROM hits_sketch_day WHERE uri = ? AND bucket = ? AND app = ? FOR UPDATE";
+    private static final String UPDATE_SKETCH =
+            "UPDATE hits_sketch_day SET sketch = ? WHERE uri = ? AND bucket = ? AND app = ?";
+    private static final String QUEUE_REPAIR =
+            "INSERT INTO sketch_backfill_days (day) SELECT DISTINCT timestamp::date FROM endpoint_hits " +
+            "WHERE timestamp >= ? ON CONFLICT (day) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int precision;
+    private final int maxPendingKeys;
+    private final int repairDays;
+    private Map<BucketKey, HyperLogLog> pending = new TreeMap<>();
+
+    public HitSketchRepository(JdbcTemplate jdbcTemplate,
+                               NamedParameterJdbcTemplate namedJdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${stats.unique.sketch-precision:12}") int precision,
+                               @Value("${stats.unique.max-pending-keys:10000}") int maxPendingKeys,
+                               @Value("${stats.unique.repair-days:1}") int repairDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.precision = precision;
+        this.maxPendingKeys = maxPendingKeys;
+        this.repairDays = repairDays;
+    }
+
+    /**
+     * Queues the recent days, which may have lost deltas, for a rebuild from raw hits by {@code CompactionJob}.
+     */
+    @PostConstruct
+    public void queueRepair() {
+        if (repairDays <= 0) {
+            return;
+        }
+        Timestamp from = Timestamp.valueOf(LocalDate.now().minusDays(repairDays).atStartOfDay());
+        try {
+            int days = jdbcTemplate.update(QUEUE_REPAIR, from);
+            log.debug("Queued {} days since {} for a sketch rebuild", days, from);
+        } catch (RuntimeException e) {
+            log.warn("Failed to queue sketch rebuild since {}: {}", from, e.getMessage());
+        }
+    }
+
+    public HyperLogLog newSketch() {
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Folds the IPs of stored hits into the pending deltas. Call after the hits are committed.
+     */
+    public void addAll(List<EndpointHit> hits) {
+        LocalDateTime today = Granularity.DAY.floor(LocalDateTime.now());
+        Map<BucketKey, HyperLogLog> late = new TreeMap<>();
+        boolean full;
+        synchronized (this) {
+            for (EndpointHit hit : hits) {
+                BucketKey key = new BucketKey(hit.getUri(), Granularity.DAY.floor(hit.getTimestamp()), hit.getApp());
+                (key.bucket().isBefore(today) ? late : pending).computeIfAbsent(key, k -> newSketch())
+                        .add(hit.getIp());
+            }
+            full = pending.size() >= maxPendingKeys;
+        }
+        if (!late.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> mergeAll(late));
+        }
+        if (full) {
+            flushPending();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.unique.flush-interval-ms:1000}")
+    @PreDestroy
+    public void flushPending() {
+        Map<BucketKey, HyperLogLog> deltas;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            deltas = pending;
+            pending = new TreeMap<>();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> mergeAll(deltas));
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush {} sketch deltas, keeping them for the next flush", deltas.size(), e);
+            synchronized (this) {
+                deltas.forEach((key, sketch) -> pending.merge(key, sketch, HyperLogLog::merge));
+            }
+        }
+    }
+
+    /**
+     * Merges each sketch into the stored one for its key, creating missing rows. Must run inside a transaction.
+     */
+    void mergeAll(Map<BucketKey, HyperLogLog> deltas) {
+        byte[] empty = newSketch().toBytes();
+        List<BucketKey> keys = new ArrayList<>(deltas.keySet());
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, keys, keys.size(), (ps, key) -> {
+            ps.setString(1, key.app());
+            ps.setString(2, key.uri());
+            ps.setTimestamp(3, Timestamp.valueOf(key.bucket()));
+            ps.setBytes(4, empty);
+        });
+        // Rows exist now, so the row locks below serialize concurrent writers in key order
+        for (Map.Entry<BucketKey, HyperLogLog> entry : deltas.entrySet()) {
+            BucketKey key = entry.getKey();
+            byte[] stored = jdbcTemplate.queryForObject(SELECT_FOR_UPDATE, byte[].class,
+                    key.uri(), Timestamp.valueOf(key.bucket()), key.app());
+            HyperLogLog merged = HyperLogLog.fromBytes(stored).merge(entry.getValue());
+            jdbcTemplate.update(UPDATE_SKETCH, merged.toBytes(), key.uri(), Timestamp.valueOf(key.bucket()),
+                    key.app());
+        }
+    }
+
+    /**
+     * Returns per-(app, uri) sketches merged over the whole days in {@code [from, to)}.
+     */
+    public Map<AppUri, HyperLogLog> mergeDays(LocalDateTime from, LocalDateTime to, StatsCriteria criteria) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        String sql = "SELECT app, uri, sketch FROM hits_sketch_day WHERE bucket >= :from AND bucket < :to" +
+                criteria.textConditions(params);
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            AppUri key = new AppUri(rs.getString("app"), rs.getString("uri"));
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            sketches.merge(key, sketch, HyperLogLog::merge);
+        });
+        return sketches;
+    }
+
+    public List<BucketSketch> findDays(LocalDateTime from, LocalDateTime to, UriFilter uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        return namedJdbcTemplate.query("SELECT app, uri, bucket, sketch FROM hits_sketch_day " +
+                "WHERE bucket >= :from AND bucket < :to" + uris.textCondition(params), params, (rs, rowNum) ->
+                new BucketSketch(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), HyperLogLog.fromBytes(rs.getBytes("sketch"))));
+    }
+}
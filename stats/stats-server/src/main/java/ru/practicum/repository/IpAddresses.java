@@ -0,0 +1,51 @@
+package ru.practicum.repository;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical text form of client IPs, so the same address hashes identically whether it arrives in a hit
+ * or is read back from the {@code inet} column.
+ */
+public final class IpAddresses {
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private IpAddresses() {
+    }
+
+    public static String normalize(String ip) {
+        if (ip == null || ip.isBlank()) {
+            throw new IllegalArgumentException("IP address must not be empty");
+        }
+        String value = ip.strip();
+        if (IPV4.matcher(value).matches()) {
+            return normalizeIpv4(value, ip);
+        }
+        if (!value.contains(":")) {
+            throw new IllegalArgumentException("Invalid IP address: " + ip);
+        }
+        // In brackets InetAddress accepts only an IPv6 literal and never falls back to a DNS lookup
+        try {
+            return InetAddress.getByName("[" + value + "]").getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid IP address: " + ip, e);
+        }
+    }
+
+    private static String normalizeIpv4(String value, String ip) {
+        String[] octets = value.split("\\.");
+        StringBuilder result = new StringBuilder(value.length());
+        for (String octet : octets) {
+            int number = Integer.parseInt(octet);
+            if (number > 255) {
+                throw new IllegalArgumentException("Invalid IP address: " + ip);
+            }
+            if (!result.isEmpty()) {
+                result.append('.');
+            }
+            result.append(number);
+        }
+        return result.toString();
+    }
+}
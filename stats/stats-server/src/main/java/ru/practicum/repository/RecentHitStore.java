@@ -0,0 +1,230 @@
+package ru.practicum.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The last few hours of hits kept in process as primitive columns, so recent-window stats skip PostgreSQL.
+ * <p>
+ * Hits live in fixed-size append-only chunks. A single writer fills a slot and then publishes it through the
+ * chunk's volatile size, and replaces the chunk array copy-on-write, so readers take a snapshot without locking.
+ * Whole chunks are evicted once they fall out of the window or the hit cap is reached; {@link #covers} only
+ * accepts ranges starting after everything evicted so far.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.recent.enabled", havingValue = "true")
+@Slf4j
+public class RecentHitStore implements SmartInitializingSingleton {
+    private static final String LOAD_WINDOW =
+            "SELECT r.app_id, a.name AS app, r.uri_id, u.uri, host(r.ip) AS ip, r.timestamp FROM endpoint_hits r " +
+            "JOIN hit_apps a ON a.id = r.app_id JOIN hit_uris u ON u.id = r.uri_id WHERE r.timestamp >= :from";
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration window;
+    private final int chunkSize;
+    private final int maxChunks;
+    private final Counter servedCounter;
+    private volatile Chunk[] chunks = new Chunk[0];
+    // Everything at or after this epoch second is in the store; Long.MAX_VALUE until the first load completes
+    private volatile long coveredFrom = Long.MAX_VALUE;
+    private long evictedBefore = Long.MIN_VALUE;
+
+    public RecentHitStore(NamedParameterJdbcTemplate namedJdbcTemplate,
+                          HitDictionary hitDictionary,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${stats.recent.window-hours:6}") int windowHours,
+                          @Value("${stats.recent.max-hits:2000000}") int maxHits,
+                          @Value("${stats.recent.chunk-size:65536}") int chunkSize) {
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.hitDictionary = hitDictionary;
+        this.transactionTemplate = transactionTemplate;
+        this.window = Duration.ofHours(windowHours);
+        this.chunkSize = chunkSize;
+        this.maxChunks = Math.max(2, maxHits / chunkSize);
+        this.servedCounter = meterRegistry.counter("stats.recent.queries");
+        Gauge.builder("stats.recent.hits", this, RecentHitStore::size).register(meterRegistry);
+    }
+
+    /**
+     * Loads the window from the database before the web server starts, so no hit can be both loaded and appended.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        long from = toEpochSecond(LocalDateTime.now().minus(window));
+        MapSqlParameterSource params = new MapSqlParameterSource("from", fromEpochSecond(from));
+        synchronized (this) {
+            // Inside a transaction the driver reads through a cursor instead of buffering the whole window
+            transactionTemplate.executeWithoutResult(status -> namedJdbcTemplate.query(LOAD_WINDOW, params, rs -> {
+                int appId = rs.getInt("app_id");
+                int uriId = rs.getInt("uri_id");
+                hitDictionary.remember(appId, rs.getString("app"), uriId, rs.getString("uri"));
+                appendLocked(appId, uriId, HyperLogLog.hash(IpAddresses.normalize(rs.getString("ip"))),
+                        toEpochSecond(rs.getTimestamp("timestamp").toLocalDateTime()));
+            }));
+            coveredFrom = Math.max(from, evictedBefore);
+        }
+        log.info("Recent hit store loaded {} hits since {}", size(), fromEpochSecond(coveredFrom));
+    }
+
+    public synchronized void append(int appId, int uriId, String ip, LocalDateTime timestamp) {
+        long epochSecond = toEpochSecond(timestamp);
+        if (coveredFrom != Long.MAX_VALUE && epochSecond < coveredFrom) {
+            return;
+        }
+        appendLocked(appId, uriId, HyperLogLog.hash(ip), epochSecond);
+    }
+
+    public boolean covers(LocalDateTime start) {
+        return toEpochSecond(start) >= coveredFrom;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.size;
+        }
+        return size;
+    }
+
+    /**
+     * Same rows as {@link StatsRepository#getStats}; unique counts are exact over 64-bit IP hashes.
+     */
+    public List<ViewStats> getStats(StatsCriteria criteria) {
+        servedCounter.increment();
+        long start = toEpochSecond(criteria.start());
+        long end = toEpochSecond(criteria.end());
+        Map<Integer, Boolean> uriMatches = new HashMap<>();
+        Map<Integer, Boolean> appMatches = new HashMap<>();
+        Map<Long, Long> counts = new HashMap<>();
+        Map<Long, Set<Long>> ips = new HashMap<>();
+        for (Chunk chunk : chunks) {
+            int size = chunk.size;
+            if (size == 0 || chunk.maxEpoch < start || chunk.minEpoch > end) {
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                long epochSecond = chunk.epochSeconds[i];
+                if (epochSecond < start || epochSecond > end
+                        || !uriMatches.computeIfAbsent(chunk.uriIds[i],
+                                id -> criteria.uris().matches(hitDictionary.uriName(id)))
+                        || criteria.app() != null && !appMatches.computeIfAbsent(chunk.appIds[i],
+                                id -> criteria.app().equals(hitDictionary.appName(id)))) {
+                    continue;
+                }
+                long key = (long) chunk.appIds[i] << 32 | chunk.uriIds[i] & 0xFFFFFFFFL;
+                if (criteria.unique()) {
+                    ips.computeIfAbsent(key, k -> new HashSet<>()).add(chunk.ipHashes[i]);
+                } else {
+                    counts.merge(key, 1L, Long::sum);
+                }
+            }
+        }
+        if (criteria.unique()) {
+            ips.forEach((key, set) -> counts.put(key, (long) set.size()));
+        }
+        List<ViewStats> stats = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> stats.add(new ViewStats(hitDictionary.appName((int) (key >>> 32)),
+                hitDictionary.uriName(key.intValue()), hits)));
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.recent.evict-interval-ms:60000}")
+    public synchronized void evictExpired() {
+        long cutoff = toEpochSecond(LocalDateTime.now().minus(window));
+        while (chunks.length > 1 && chunks[0].maxEpoch < cutoff) {
+            evictOldest();
+        }
+    }
+
+    private void appendLocked(int appId, int uriId, long ipHash, long epochSecond) {
+        Chunk[] current = chunks;
+        Chunk tail = current.length == 0 ? null : current[current.length - 1];
+        if (tail == null || tail.size == chunkSize) {
+            tail = new Chunk(chunkSize);
+            Chunk[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = tail;
+            chunks = next;
+            while (chunks.length > maxChunks) {
+                evictOldest();
+            }
+        }
+        tail.add(appId, uriId, ipHash, epochSecond);
+    }
+
+    private void evictOldest() {
+        Chunk oldest = chunks[0];
+        chunks = Arrays.copyOfRange(chunks, 1, chunks.length);
+        if (oldest.size > 0) {
+            evictedBefore = Math.max(evictedBefore, oldest.maxEpoch + 1);
+        }
+        if (coveredFrom != Long.MAX_VALUE) {
+            coveredFrom = Math.max(coveredFrom, evictedBefore);
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC);
+    }
+
+    private static final class Chunk {
+        private final int[] appIds;
+        private final int[] uriIds;
+        private final long[] ipHashes;
+        private final long[] epochSeconds;
+        // Written before size, so a reader that has seen size also sees bounds covering those slots
+        private volatile long minEpoch = Long.MAX_VALUE;
+        private volatile long maxEpoch = Long.MIN_VALUE;
+        private volatile int size;
+
+        private Chunk(int capacity) {
+            appIds = new int[capacity];
+            uriIds = new int[capacity];
+            ipHashes = new long[capacity];
+            epochSeconds = new long[capacity];
+        }
+
+        private void add(int appId, int uriId, long ipHash, long epochSecond) {
+            int index = size;
+            appIds[index] = appId;
+            uriIds[index] = uriId;
+            ipHashes[index] = ipHash;
+            epochSeconds[index] = epochSecond;
+            minEpoch = Math.min(minEpoch, epochSecond);
+            maxEpoch = Math.max(maxEpoch, epochSecond);
+            size = index + 1;
+        }
+    }
+}
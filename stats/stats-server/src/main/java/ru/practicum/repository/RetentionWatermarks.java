@@ -0,0 +1,38 @@
+package ru.practicum.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Where each finer storage tier starts after compaction: raw hits exist from {@code rawFrom} on, minute
+ * rollups from {@code minuteFrom}, hour rollups from {@code hourFrom}; day rollups are never pruned.
+ * The compaction job keeps {@code hourFrom <= minuteFrom <= rawFrom}, all at day boundaries.
+ */
+public record RetentionWatermarks(LocalDateTime rawFrom, LocalDateTime minuteFrom, LocalDateTime hourFrom) {
+    public static final RetentionWatermarks NONE =
+            new RetentionWatermarks(LocalDateTime.MIN, LocalDateTime.MIN, LocalDateTime.MIN);
+
+    public LocalDateTime availableFrom(Granularity granularity) {
+        return switch (granularity) {
+            case RAW -> rawFrom;
+            case MINUTE -> minuteFrom;
+            case HOUR -> hourFrom;
+            case DAY -> LocalDateTime.MIN;
+        };
+    }
+
+    /**
+     * The finest tier that still holds data for {@code time}.
+     */
+    public Granularity finestAt(LocalDateTime time) {
+        for (Granularity granularity : Granularity.values()) {
+            if (!time.isBefore(availableFrom(granularity))) {
+                return granularity;
+            }
+        }
+        return Granularity.DAY;
+    }
+
+    public boolean isRawAvailable(LocalDateTime time) {
+        return !time.isBefore(rawFrom);
+    }
+}
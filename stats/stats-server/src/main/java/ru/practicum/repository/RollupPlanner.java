@@ -0,0 +1,144 @@
+package ru.practicum.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an inclusive {@code [start, end]} range into the coarsest rollup buckets that fit entirely inside it.
+ * Only the sub-minute edges are left for the raw {@code endpoint_hits} table.
+ */
+public final class RollupPlanner {
+    private static final Granularity[] LEVELS = {Granularity.DAY, Granularity.HOUR, Granularity.MINUTE};
+
+    private RollupPlanner() {
+    }
+
+    public static List<Segment> plan(LocalDateTime start, LocalDateTime end) {
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime from = Granularity.MINUTE.ceil(start);
+        LocalDateTime to = Granularity.MINUTE.floor(end);
+        if (!from.isBefore(to)) {
+            segments.add(new Segment(Granularity.RAW, start, end, true));
+            return segments;
+        }
+        if (start.isBefore(from)) {
+            segments.add(new Segment(Granularity.RAW, start, from, false));
+        }
+        decompose(from, to, 0, segments);
+        segments.add(new Segment(Granularity.RAW, to, end, true));
+        return segments;
+    }
+
+    /**
+     * Like {@link #plan(LocalDateTime, LocalDateTime)}, but parts of the range whose finer tiers were compacted
+     * away are served by the finest remaining tier, widened outward to its bucket boundaries.
+     */
+    public static List<Segment> plan(LocalDateTime start, LocalDateTime end, RetentionWatermarks watermarks) {
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime from = start;
+        while (true) {
+            Granularity finest = watermarks.finestAt(from);
+            if (finest == Granularity.RAW) {
+                segments.addAll(plan(from, end));
+                return segments;
+            }
+            LocalDateTime alignedFrom = finest.floor(from);
+            // Watermarks are day-aligned, so the next finer tier starts on a boundary of every coarser one
+            LocalDateTime finerFrom = watermarks.availableFrom(Granularity.values()[finest.ordinal() - 1]);
+            if (end.isBefore(finerFrom)) {
+                decompose(alignedFrom, finest.floor(end).plus(1, finest.getUnit()), 0, segments);
+                return segments;
+            }
+            decompose(alignedFrom, finerFrom, 0, segments);
+            from = finerFrom;
+        }
+    }
+
+    /**
+     * Whether the plan for the watermarks counts exactly the hits in {@code [start, end]}. An edge that falls in
+     * a compacted part must lie on a bucket boundary of the tier there. Hit timestamps are whole seconds, so an
+     * end in the last second of a bucket counts as being on the boundary.
+     */
+    public static boolean isExact(LocalDateTime start, LocalDateTime end, RetentionWatermarks watermarks) {
+        Granularity first = watermarks.finestAt(start);
+        if (first != Granularity.RAW && !first.floor(start).equals(start)) {
+            return false;
+        }
+        Granularity last = watermarks.finestAt(end);
+        return last == Granularity.RAW || !last.floor(end).plus(1, last.getUnit())
+                .isAfter(end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1));
+    }
+
+    /**
+     * Splits a plan into at most {@code parts} groups of roughly equal time span, cutting day segments at day
+     * boundaries. Every bucket stays in exactly one group, so per-group counts can simply be added up.
+     */
+    public static List<List<Segment>> partition(List<Segment> segments, int parts) {
+        if (parts <= 1) {
+            return List.of(segments);
+        }
+        long total = segments.stream().mapToLong(RollupPlanner::seconds).sum();
+        long target = Math.max(1, (total + parts - 1) / parts);
+        List<List<Segment>> groups = new ArrayList<>();
+        List<Segment> group = new ArrayList<>();
+        long filled = 0;
+        for (Segment segment : segments) {
+            Segment rest = segment;
+            while (rest != null) {
+                LocalDateTime cut = Granularity.DAY.ceil(rest.from().plusSeconds(target - filled));
+                if (rest.granularity() != Granularity.DAY || !cut.isAfter(rest.from()) || !cut.isBefore(rest.to())) {
+                    group.add(rest);
+                    filled += seconds(rest);
+                    rest = null;
+                } else {
+                    Segment head = new Segment(Granularity.DAY, rest.from(), cut, false);
+                    group.add(head);
+                    filled += seconds(head);
+                    rest = new Segment(Granularity.DAY, cut, rest.to(), rest.inclusiveEnd());
+                }
+                if (filled >= target && groups.size() < parts - 1) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                    filled = 0;
+                }
+            }
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private static long seconds(Segment segment) {
+        return Duration.between(segment.from(), segment.to()).toSeconds();
+    }
+
+    private static void decompose(LocalDateTime from, LocalDateTime to, int level, List<Segment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        Granularity granularity = LEVELS[level];
+        if (level == LEVELS.length - 1) {
+            segments.add(new Segment(granularity, from, to, false));
+            return;
+        }
+        LocalDateTime alignedFrom = granularity.ceil(from);
+        LocalDateTime alignedTo = granularity.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            decompose(from, alignedFrom, level + 1, segments);
+            segments.add(new Segment(granularity, alignedFrom, alignedTo, false));
+            decompose(alignedTo, to, level + 1, segments);
+        } else {
+            decompose(from, to, level + 1, segments);
+        }
+    }
+
+    /**
+     * A slice of the requested range served by one table; {@code to} is exclusive unless {@code inclusiveEnd}.
+     */
+    public record Segment(Granularity granularity, LocalDateTime from, LocalDateTime to, boolean inclusiveEnd) {
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.time.LocalDateTime;
+
+/**
+ * What a stats read asks for: an inclusive time range, the URIs, an optional app and the counting mode.
+ */
+public record StatsCriteria(LocalDateTime start, LocalDateTime end, UriFilter uris, String app,
+                            boolean unique, boolean exact) {
+
+    /**
+     * Filter for tables keyed by {@code uri_id} and {@code app_id}.
+     */
+    public String idConditions(MapSqlParameterSource params) {
+        String conditions = uris.idCondition(params);
+        if (app != null) {
+            params.addValue("app", app);
+            conditions += " AND app_id = (SELECT id FROM hit_apps WHERE name = :app)";
+        }
+        return conditions;
+    }
+
+    /**
+     * Filter for tables keyed by the app and URI text.
+     */
+    public String textConditions(MapSqlParameterSource params) {
+        String conditions = uris.textCondition(params);
+        if (app != null) {
+            params.addValue("app", app);
+            conditions += " AND app = :app";
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool for the time slices of long-range stats queries. Each slice borrows its own connection, so the
+ * connection pool must hold {@code stats.query.parallelism} on top of one per read permit. When the pool and its
+ * queue are full, the calling request thread runs the slice itself, on the connection it would use anyway.
+ */
+@Component
+public class StatsQueryExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int parallelism;
+    private final long sliceDays;
+
+    public StatsQueryExecutor(@Value("${stats.query.parallelism:4}") int parallelism,
+                              @Value("${stats.query.slice-days:31}") long sliceDays) {
+        this.parallelism = parallelism;
+        this.sliceDays = sliceDays;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 16), runnable -> {
+                    Thread thread = new Thread(runnable, "stats-query-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * How many slices a range is worth: one per {@code stats.query.slice-days}, at most {@code parallelism}.
+     */
+    public int sliceCount(LocalDateTime start, LocalDateTime end) {
+        if (parallelism <= 1 || sliceDays <= 0) {
+            return 1;
+        }
+        long days = Duration.between(start, end).toDays();
+        return (int) Math.max(1, Math.min(parallelism, (days + sliceDays - 1) / sliceDays));
+    }
+
+    public <T> List<T> invokeAll(List<Supplier<T>> tasks) {
+        List<CompletableFuture<T>> futures = tasks.stream()
+                .map(task -> CompletableFuture.supplyAsync(task, executor))
+                .toList();
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,48 +1,57 @@
 package ru.practicum.repository;
 
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import ru.practicum.dto.EndpointHit;
 import ru.practicum.dto.ViewStats;
+import ru.practicum.sketch.HyperLogLog;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
-public interface StatsRepository extends JpaRepository<EndpointHit, Long> {
-
-    @Query("SELECT new ru.practicum.dto.ViewStats(h.app, h.uri, " +
-            "CASE WHEN :unique = true THEN COUNT(DISTINCT h.ip) ELSE COUNT(h.ip) END) " +
-            "FROM EndpointHit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN (:uris)) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStats> getStats(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("uris") List<String> uris,
-            @Param("unique") boolean unique);
-
-    @Query("SELECT new ru.practicum.dto.ViewStats(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM EndpointHit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<ViewStats> getUniqueStats(@Param("start") LocalDateTime start,
-                                   @Param("end") LocalDateTime end,
-                                   @Param("uris") List<String> uris);
-
-    @Query("SELECT new ru.practicum.dto.ViewStats(h.app, h.uri, " +
-            "CASE WHEN :unique = true THEN COUNT(DISTINCT h.ip) ELSE COUNT(h.ip) END) " +
-            "FROM EndpointHit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND h.uri = :uri " +
-            "GROUP BY h.app, h.uri")
-    List<ViewStats> getStatsForUri(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("uri") String uri,
-            @Param("unique") boolean unique);
+public interface StatsRepository {
+    void insertAll(List<EndpointHit> hits);
+
+    /**
+     * Long ranges are split into time slices that run in parallel, unless called inside a transaction.
+     */
+    List<ViewStats> getStats(StatsCriteria criteria);
+
+    /**
+     * Same as {@link #getStats} but hands rows to {@code consumer} while the cursor is read; call inside a transaction
+     * so the driver can fetch in chunks instead of buffering the whole result. Never split into slices.
+     */
+    void streamStats(StatsCriteria criteria, Consumer<ViewStats> consumer);
+
+    /**
+     * Like {@link #streamStats} without ordering the rows, for callers that rank or merge them themselves.
+     */
+    void forEachStat(StatsCriteria criteria, Consumer<ViewStats> consumer);
+
+    /**
+     * Throws {@link IllegalArgumentException} when {@code exact=true} cannot be honoured for the range, as the
+     * query methods would.
+     */
+    void checkExact(StatsCriteria criteria);
+
+    /**
+     * Hits per {@code granularity} bucket ordered by bucket; buckets cut by the range edges are counted from raw hits.
+     * Throws {@link IllegalArgumentException} when the range starts where compaction already pruned that rollup.
+     */
+    List<BucketCount> getBucketCounts(StatsCriteria criteria, Granularity granularity);
+
+    /**
+     * Per-(app, uri) unique-IP sketches for the range, built like the approximate {@code unique=true} counts.
+     */
+    Map<AppUri, HyperLogLog> getSketches(StatsCriteria criteria);
+
+    /**
+     * Day rollup rows for the whole days in {@code [from, to)}.
+     */
+    List<BucketCount> getDayCounts(UriFilter uris, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Stored day sketches for the whole days in {@code [from, to)}.
+     */
+    List<BucketSketch> getDaySketches(UriFilter uris, LocalDateTime from, LocalDateTime to);
 }
@@ -0,0 +1,376 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Repository
+@RequiredArgsConstructor
+public class StatsRepositoryImpl implements StatsRepository {
+    private static final String INSERT_HIT =
+            "INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?::inet, ?)";
+    private static final String DECODE_NAMES = " JOIN hit_apps a ON a.id = r.app_id JOIN hit_uris u ON u.id = r.uri_id";
+    private static final int BATCH_SIZE = 500;
+    private static final RowMapper<ViewStats> VIEW_STATS_MAPPER = (rs, rowNum) ->
+            new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitDictionary hitDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final Optional<RecentHitStore> recentHitStore;
+    private final HitIdRegistry hitIdRegistry;
+    private final CompactionRepository compactionRepository;
+    private final StatsQueryExecutor statsQueryExecutor;
+
+    @Override
+    public void insertAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        // Dictionary ids are resolved before the write transaction so it never waits on a second connection
+        List<EncodedHit> encoded = hits.stream()
+                .map(hit -> new EncodedHit(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()), hit))
+                .toList();
+        List<EncodedHit> accepted = transactionTemplate.execute(status -> {
+            List<EncodedHit> rows = withoutDuplicates(encoded);
+            // With reWriteBatchedInserts the driver folds each batch into multi-row INSERT statements
+            jdbcTemplate.batchUpdate(INSERT_HIT, rows, BATCH_SIZE, (ps, row) -> {
+                ps.setInt(1, row.appId());
+                ps.setInt(2, row.uriId());
+                ps.setString(3, row.hit().getIp());
+                ps.setTimestamp(4, Timestamp.valueOf(row.hit().getTimestamp()));
+            });
+            return rows;
+        });
+        // Rollups are counted off the write transaction so it never holds their hot rows, see HitRollupRepository
+        List<EndpointHit> acceptedHits = accepted.stream().map(EncodedHit::hit).toList();
+        hitRollupRepository.addAll(acceptedHits);
+        hitSketchRepository.addAll(acceptedHits);
+        recentHitStore.ifPresent(store -> accepted.forEach(row ->
+                store.append(row.appId(), row.uriId(), row.hit().getIp(), row.hit().getTimestamp())));
+    }
+
+    /**
+     * Drops hits whose client id was already accepted, in this batch or within the dedup window.
+     */
+    private List<EncodedHit> withoutDuplicates(List<EncodedHit> encoded) {
+        Set<String> hitIds = encoded.stream()
+                .map(row -> row.hit().getHitId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (hitIds.isEmpty()) {
+            return encoded;
+        }
+        Set<String> claimed = hitIdRegistry.claim(hitIds);
+        return encoded.stream()
+                .filter(row -> row.hit().getHitId() == null || claimed.remove(row.hit().getHitId()))
+                .toList();
+    }
+
+    @Override
+    public List<ViewStats> getStats(StatsCriteria criteria) {
+        List<ViewStats> stats = new ArrayList<>();
+        queryStats(criteria, true, true, stats::add);
+        return stats;
+    }
+
+    @Override
+    public void streamStats(StatsCriteria criteria, Consumer<ViewStats> consumer) {
+        // Slices would have to be collected and sorted before the first row could be sent
+        queryStats(criteria, true, false, consumer);
+    }
+
+    @Override
+    public void forEachStat(StatsCriteria criteria, Consumer<ViewStats> consumer) {
+        queryStats(criteria, false, true, consumer);
+    }
+
+    private void queryStats(StatsCriteria criteria, boolean ordered, boolean sliced, Consumer<ViewStats> consumer) {
+        if (recentHitStore.isPresent() && recentHitStore.get().covers(criteria.start())) {
+            recentHitStore.get().getStats(criteria).forEach(consumer);
+            return;
+        }
+        RetentionWatermarks watermarks = compactionRepository.getWatermarks();
+        if (criteria.exact()) {
+            checkExact(criteria, watermarks);
+        }
+        if (criteria.unique() && criteria.exact()) {
+            queryExactUniqueStats(criteria, ordered, consumer);
+            return;
+        }
+        if (criteria.unique()) {
+            getApproximateUniqueStats(criteria, watermarks).forEach(consumer);
+            return;
+        }
+        List<RollupPlanner.Segment> segments = RollupPlanner.plan(criteria.start(), criteria.end(), watermarks);
+        int slices = sliced ? sliceCount(criteria.start(), criteria.end()) : 1;
+        if (slices <= 1) {
+            querySegments(segments, criteria, ordered, consumer);
+            return;
+        }
+        // Each slice runs on its own connection; slices never share a bucket, so their counts simply add up
+        List<Supplier<Map<AppUri, Long>>> tasks = RollupPlanner.partition(segments, slices).stream()
+                .<Supplier<Map<AppUri, Long>>>map(group -> () -> {
+                    Map<AppUri, Long> counts = new HashMap<>();
+                    querySegments(group, criteria, false, stat ->
+                            counts.merge(new AppUri(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+                    return counts;
+                })
+                .toList();
+        Map<AppUri, Long> counts = new HashMap<>();
+        statsQueryExecutor.invokeAll(tasks).forEach(partial -> partial.forEach((key, hits) ->
+                counts.merge(key, hits, Long::sum)));
+        Stream<ViewStats> stats = counts.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(), entry.getValue()));
+        (ordered ? stats.sorted(Comparator.comparing(ViewStats::getHits).reversed()) : stats).forEach(consumer);
+    }
+
+    @Override
+    public void checkExact(StatsCriteria criteria) {
+        if (criteria.exact()) {
+            checkExact(criteria, compactionRepository.getWatermarks());
+        }
+    }
+
+    /**
+     * Compacted data only answers approximately: raw IPs are gone, and rollup buckets cut by the range edges are
+     * counted whole.
+     */
+    private static void checkExact(StatsCriteria criteria, RetentionWatermarks watermarks) {
+        if (criteria.unique() && !watermarks.isRawAvailable(criteria.start())) {
+            throw new IllegalArgumentException("Exact unique counts are only available from " +
+                    watermarks.rawFrom() + ", drop exact=true for an estimate");
+        }
+        if (!criteria.unique() && !RollupPlanner.isExact(criteria.start(), criteria.end(), watermarks)) {
+            throw new IllegalArgumentException("Range edges before " + watermarks.rawFrom() +
+                    " must fall on compacted bucket boundaries, or drop exact=true for an estimate");
+        }
+    }
+
+    private void querySegments(List<RollupPlanner.Segment> segments, StatsCriteria criteria, boolean ordered,
+                               Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            RollupPlanner.Segment segment = segments.get(i);
+            params.addValue("from" + i, segment.from()).addValue("to" + i, segment.to());
+            String upper = segment.inclusiveEnd() ? " <= :to" + i : " < :to" + i;
+            if (segment.granularity() == Granularity.RAW) {
+                parts.add("SELECT a.name AS app, u.uri, r.hits FROM (SELECT app_id, uri_id, COUNT(*) AS hits " +
+                        "FROM endpoint_hits WHERE timestamp >= :from" + i + " AND timestamp" + upper +
+                        criteria.idConditions(params) + " GROUP BY app_id, uri_id) r" + DECODE_NAMES);
+            } else {
+                parts.add("SELECT app, uri, SUM(hits) AS hits FROM " + segment.granularity().getTable() +
+                        " WHERE bucket >= :from" + i + " AND bucket" + upper +
+                        criteria.textConditions(params) + " GROUP BY app, uri");
+            }
+        }
+        namedJdbcTemplate.query("SELECT app, uri, SUM(hits) AS hits FROM (" +
+                String.join(" UNION ALL ", parts) +
+                ") segments GROUP BY app, uri" + (ordered ? " ORDER BY hits DESC" : ""), params,
+                rs -> consumer.accept(VIEW_STATS_MAPPER.mapRow(rs, rs.getRow())));
+    }
+
+    @Override
+    public List<BucketCount> getBucketCounts(StatsCriteria criteria, Granularity granularity) {
+        // Edge buckets whose raw hits were compacted are taken whole from the rollup
+        RetentionWatermarks watermarks = compactionRepository.getWatermarks();
+        checkAvailable(criteria, granularity, watermarks);
+        LocalDateTime from = watermarks.isRawAvailable(criteria.start())
+                ? granularity.ceil(criteria.start())
+                : granularity.floor(criteria.start());
+        LocalDateTime to = watermarks.isRawAvailable(criteria.end())
+                ? granularity.floor(criteria.end())
+                : granularity.floor(criteria.end()).plus(1, granularity.getUnit());
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> parts = new ArrayList<>();
+        if (from.isAfter(to)) {
+            parts.add(rawBuckets(criteria, granularity, criteria.start(), criteria.end(), " <= ", 0, params));
+        } else {
+            parts.add(rawBuckets(criteria, granularity, criteria.start(), from, " < ", 0, params));
+            params.addValue("from1", from).addValue("to1", to);
+            parts.add("SELECT app, uri, bucket, hits FROM " + granularity.getTable() +
+                    " WHERE bucket >= :from1 AND bucket < :to1" + criteria.textConditions(params));
+            parts.add(rawBuckets(criteria, granularity, to, criteria.end(), " <= ", 2, params));
+        }
+        return namedJdbcTemplate.query("SELECT app, uri, bucket, SUM(hits) AS hits FROM (" +
+                String.join(" UNION ALL ", parts) +
+                ") buckets GROUP BY app, uri, bucket ORDER BY bucket", params, (rs, rowNum) ->
+                new BucketCount(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    /**
+     * Buckets before the raw watermark come from the {@code granularity} rollup alone, which compaction may have
+     * pruned there; they would read as zero.
+     */
+    private static void checkAvailable(StatsCriteria criteria, Granularity granularity,
+                                       RetentionWatermarks watermarks) {
+        LocalDateTime availableFrom = watermarks.availableFrom(granularity);
+        if (!watermarks.isRawAvailable(criteria.start())
+                && granularity.floor(criteria.start()).isBefore(availableFrom)) {
+            throw new IllegalArgumentException(granularity.name().toLowerCase() + " buckets are only kept from " +
+                    availableFrom + ", use a coarser interval or a later start");
+        }
+    }
+
+    private String rawBuckets(StatsCriteria criteria, Granularity granularity, LocalDateTime from, LocalDateTime to,
+                              String upper, int index, MapSqlParameterSource params) {
+        params.addValue("from" + index, from).addValue("to" + index, to);
+        String field = granularity.name().toLowerCase();
+        return "SELECT a.name AS app, u.uri, r.bucket, r.hits FROM (SELECT app_id, uri_id, " +
+                "date_trunc('" + field + "', timestamp) AS bucket, COUNT(*) AS hits FROM endpoint_hits " +
+                "WHERE timestamp >= :from" + index + " AND timestamp" + upper + ":to" + index +
+                criteria.idConditions(params) + " GROUP BY app_id, uri_id, bucket) r" + DECODE_NAMES;
+    }
+
+    private void queryExactUniqueStats(StatsCriteria criteria, boolean ordered, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", criteria.start())
+                .addValue("end", criteria.end());
+        namedJdbcTemplate.query("SELECT a.name AS app, u.uri, r.hits FROM " +
+                "(SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM endpoint_hits " +
+                "WHERE timestamp BETWEEN :start AND :end" + criteria.idConditions(params) +
+                " GROUP BY app_id, uri_id) r" + DECODE_NAMES + (ordered ? " ORDER BY r.hits DESC" : ""), params,
+                rs -> consumer.accept(VIEW_STATS_MAPPER.mapRow(rs, rs.getRow())));
+    }
+
+    private List<ViewStats> getApproximateUniqueStats(StatsCriteria criteria, RetentionWatermarks watermarks) {
+        if (!firstSketchDay(criteria, watermarks).isBefore(endSketchDay(criteria, watermarks))) {
+            List<ViewStats> stats = new ArrayList<>();
+            queryExactUniqueStats(criteria, true, stats::add);
+            return stats;
+        }
+        return collectSketches(criteria, watermarks).entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(), entry.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    @Override
+    public Map<AppUri, HyperLogLog> getSketches(StatsCriteria criteria) {
+        return collectSketches(criteria, compactionRepository.getWatermarks());
+    }
+
+    private Map<AppUri, HyperLogLog> collectSketches(StatsCriteria criteria, RetentionWatermarks watermarks) {
+        LocalDateTime dayFrom = firstSketchDay(criteria, watermarks);
+        LocalDateTime dayTo = endSketchDay(criteria, watermarks);
+        if (!dayFrom.isBefore(dayTo)) {
+            Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+            addRawIps(sketches, criteria.start(), criteria.end(), " <= :to", criteria);
+            return sketches;
+        }
+        Map<AppUri, HyperLogLog> sketches = mergeDaySketches(dayFrom, dayTo, criteria);
+        if (criteria.start().isBefore(dayFrom)) {
+            addRawIps(sketches, criteria.start(), dayFrom, " < :to", criteria);
+        }
+        if (!criteria.end().isBefore(dayTo)) {
+            addRawIps(sketches, dayTo, criteria.end(), " <= :to", criteria);
+        }
+        return sketches;
+    }
+
+    // Partial edge days are completed from raw IPs, or taken whole once those were compacted
+    private static LocalDateTime firstSketchDay(StatsCriteria criteria, RetentionWatermarks watermarks) {
+        return watermarks.isRawAvailable(criteria.start())
+                ? Granularity.DAY.ceil(criteria.start())
+                : Granularity.DAY.floor(criteria.start());
+    }
+
+    private static LocalDateTime endSketchDay(StatsCriteria criteria, RetentionWatermarks watermarks) {
+        return watermarks.isRawAvailable(criteria.end())
+                ? Granularity.DAY.floor(criteria.end())
+                : Granularity.DAY.floor(criteria.end()).plusDays(1);
+    }
+
+    @Override
+    public List<BucketCount> getDayCounts(UriFilter uris, LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        return namedJdbcTemplate.query("SELECT app, uri, bucket, hits FROM hits_rollup_day " +
+                "WHERE bucket >= :from AND bucket < :to" + uris.textCondition(params), params, (rs, rowNum) ->
+                new BucketCount(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    @Override
+    public List<BucketSketch> getDaySketches(UriFilter uris, LocalDateTime from, LocalDateTime to) {
+        return hitSketchRepository.findDays(from, to, uris);
+    }
+
+    private Map<AppUri, HyperLogLog> mergeDaySketches(LocalDateTime dayFrom, LocalDateTime dayTo,
+                                                      StatsCriteria criteria) {
+        int slices = sliceCount(dayFrom, dayTo);
+        long days = Duration.between(dayFrom, dayTo).toDays();
+        List<Supplier<Map<AppUri, HyperLogLog>>> tasks = new ArrayList<>();
+        for (int i = 0; i < slices; i++) {
+            LocalDateTime from = dayFrom.plusDays(days * i / slices);
+            LocalDateTime to = dayFrom.plusDays(days * (i + 1) / slices);
+            tasks.add(() -> hitSketchRepository.mergeDays(from, to, criteria));
+        }
+        if (tasks.size() == 1) {
+            return tasks.get(0).get();
+        }
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        statsQueryExecutor.invokeAll(tasks).forEach(partial -> partial.forEach((key, sketch) ->
+                sketches.merge(key, sketch, HyperLogLog::merge)));
+        return sketches;
+    }
+
+    /**
+     * A caller inside a transaction already holds a connection for the whole request, so its slices would each
+     * take another one from the pool while it waits; such reads run in one piece on the caller's connection.
+     */
+    private int sliceCount(LocalDateTime start, LocalDateTime end) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return 1;
+        }
+        return statsQueryExecutor.sliceCount(start, end);
+    }
+
+    private void addRawIps(Map<AppUri, HyperLogLog> sketches, LocalDateTime from, LocalDateTime to,
+                           String upper, StatsCriteria criteria) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        namedJdbcTemplate.query("SELECT a.name AS app, u.uri, host(r.ip) AS ip FROM " +
+                "(SELECT DISTINCT app_id, uri_id, ip FROM endpoint_hits " +
+                "WHERE timestamp >= :from AND timestamp" + upper + criteria.idConditions(params) + ") r" +
+                DECODE_NAMES, params, rs -> {
+                    AppUri key = new AppUri(rs.getString("app"), rs.getString("uri"));
+                    sketches.computeIfAbsent(key, k -> hitSketchRepository.newSketch())
+                            .add(IpAddresses.normalize(rs.getString("ip")));
+                });
+    }
+
+    private record EncodedHit(int appId, int uriId, EndpointHit hit) {
+    }
+}
@@ -0,0 +1,89 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exact URIs plus prefix patterns such as {@code /events/*}. Prefixes are matched against the small
+ * {@code hit_uris} dictionary through its pattern index rather than against the hit and rollup tables.
+ */
+public record UriFilter(List<String> uris, List<String> prefixes) {
+    public static final UriFilter ALL = new UriFilter(List.of(), List.of());
+
+    public static UriFilter of(List<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return ALL;
+        }
+        List<String> uris = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*")) {
+                prefixes.add(pattern.substring(0, pattern.length() - 1));
+            } else {
+                uris.add(pattern);
+            }
+        }
+        return new UriFilter(List.copyOf(uris), List.copyOf(prefixes));
+    }
+
+    /**
+     * Matches the URIs as given, a trailing {@code *} included.
+     */
+    public static UriFilter exact(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return ALL;
+        }
+        return new UriFilter(List.copyOf(uris), List.of());
+    }
+
+    public boolean isAll() {
+        return uris.isEmpty() && prefixes.isEmpty();
+    }
+
+    public boolean matches(String uri) {
+        return isAll() || uris.contains(uri) || prefixes.stream().anyMatch(uri::startsWith);
+    }
+
+    /**
+     * Condition for tables keyed by {@code uri_id}.
+     */
+    public String idCondition(MapSqlParameterSource params) {
+        if (isAll()) {
+            return "";
+        }
+        return " AND uri_id IN (SELECT id FROM hit_uris WHERE " + dictionaryPredicate(params) + ")";
+    }
+
+    /**
+     * Condition for tables keyed by the URI text.
+     */
+    public String textCondition(MapSqlParameterSource params) {
+        if (isAll()) {
+            return "";
+        }
+        if (prefixes.isEmpty()) {
+            params.addValue("uris", uris);
+            return " AND uri IN (:uris)";
+        }
+        return " AND uri IN (SELECT uri FROM hit_uris WHERE " + dictionaryPredicate(params) + ")";
+    }
+
+    private String dictionaryPredicate(MapSqlParameterSource params) {
+        List<String> terms = new ArrayList<>();
+        if (!uris.isEmpty()) {
+            params.addValue("uris", uris);
+            terms.add("uri IN (:uris)");
+        }
+        for (int i = 0; i < prefixes.size(); i++) {
+            params.addValue("uriPrefix" + i, escapeLike(prefixes.get(i)) + "%");
+            terms.add("uri LIKE :uriPrefix" + i);
+        }
+        return "(" + String.join(" OR ", terms) + ")";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,124 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.Granularity;
+import ru.practicum.repository.RetentionWatermarks;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Tiered retention: raw hits older than {@code raw-after-days} are folded into the day rollups and sketches and
+ * deleted, minute and hour rollups are pruned after their own retention. Reads pick the finest tier left for each
+ * part of a range, so a pruned tier may never start later than a finer one; the cutoffs are clamped accordingly.
+ * <p>
+ * Days migrated in bulk by {@code schema.sql}, and recent days whose sketch deltas may have been lost by the last
+ * instance, get their sketches built from raw hits shortly after startup, whether or not compaction is enabled; the
+ * check repeats every {@code backfill-interval-ms} in case it failed.
+ */
+@Component
+@Slf4j
+public class CompactionJob {
+    private final CompactionRepository compactionRepository;
+    private final int rawAfterDays;
+    private final int minuteRetentionDays;
+    private final int hourRetentionDays;
+    private final int chunkSize;
+
+    public CompactionJob(CompactionRepository compactionRepository,
+                         @Value("${stats.compaction.raw-after-days:0}") int rawAfterDays,
+                         @Value("${stats.compaction.minute-retention-days:0}") int minuteRetentionDays,
+                         @Value("${stats.compaction.hour-retention-days:0}") int hourRetentionDays,
+                         @Value("${stats.compaction.chunk-size:5000}") int chunkSize) {
+        this.compactionRepository = compactionRepository;
+        this.rawAfterDays = rawAfterDays;
+        this.minuteRetentionDays = minuteRetentionDays;
+        this.hourRetentionDays = hourRetentionDays;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(cron = "${stats.compaction.cron:0 45 0 * * *}")
+    public void compact() {
+        if (rawAfterDays <= 0) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            LocalDateTime rawFrom = compactRaw(today.minusDays(rawAfterDays));
+            LocalDateTime minuteFrom = prune(Granularity.MINUTE, today, minuteRetentionDays, rawFrom);
+            prune(Granularity.HOUR, today, hourRetentionDays, minuteFrom);
+        } catch (RuntimeException e) {
+            log.error("Compaction failed", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${stats.compaction.backfill-delay-ms:10000}",
+            fixedDelayString = "${stats.compaction.backfill-interval-ms:3600000}")
+    public void backfillSketches() {
+        List<LocalDate> days = compactionRepository.findSketchBackfillDays();
+        if (days.isEmpty()) {
+            return;
+        }
+        log.info("Building day sketches for {} days from raw hits", days.size());
+        try {
+            days.forEach(compactionRepository::backfillSketchDay);
+        } catch (RuntimeException e) {
+            log.error("Sketch backfill failed, retrying on the next run", e);
+        }
+    }
+
+    private LocalDateTime compactRaw(LocalDate cutoff) {
+        compactionRepository.refreshWatermarks();
+        LocalDateTime rawFrom = compactionRepository.getWatermarks().rawFrom();
+        LocalDate oldest = compactionRepository.findOldestRawDay();
+        if (oldest != null) {
+            LocalDate day = rawFrom.equals(LocalDateTime.MIN) ? oldest : rawFrom.toLocalDate();
+            for (; day.isBefore(cutoff); day = day.plusDays(1)) {
+                compactionRepository.foldRawDay(day);
+            }
+            if (day.isAfter(rawFrom.toLocalDate())) {
+                log.info("Compacted raw hits before {}", day);
+                rawFrom = day.atStartOfDay();
+            }
+        }
+        // Readers on this instance must switch to the rollups before the raw rows disappear
+        compactionRepository.refreshWatermarks();
+        deleteInChunks(Granularity.RAW, rawFrom);
+        return rawFrom;
+    }
+
+    private LocalDateTime prune(Granularity tier, LocalDate today, int retentionDays, LocalDateTime finerFrom) {
+        if (retentionDays <= 0 || finerFrom.equals(LocalDateTime.MIN)) {
+            return LocalDateTime.MIN;
+        }
+        LocalDateTime cutoff = today.minusDays(retentionDays).atStartOfDay();
+        if (cutoff.isAfter(finerFrom)) {
+            cutoff = finerFrom;
+        }
+        compactionRepository.advance(tier, cutoff);
+        compactionRepository.refreshWatermarks();
+        RetentionWatermarks watermarks = compactionRepository.getWatermarks();
+        deleteInChunks(tier, watermarks.availableFrom(tier));
+        return watermarks.availableFrom(tier);
+    }
+
+    private void deleteInChunks(Granularity tier, LocalDateTime before) {
+        if (before.equals(LocalDateTime.MIN)) {
+            return;
+        }
+        long total = 0;
+        int deleted;
+        do {
+            deleted = compactionRepository.deleteBefore(tier, before, chunkSize);
+            total += deleted;
+        } while (deleted == chunkSize);
+        if (total > 0) {
+            log.info("Deleted {} {} rows before {}", total, tier.name().toLowerCase(), before);
+        }
+    }
+}
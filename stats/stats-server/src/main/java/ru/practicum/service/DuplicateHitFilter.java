@@ -0,0 +1,150 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.sketch.BloomFilter;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drops repeat hits of the same app, URI and IP within {@code stats.suppress.window-seconds} of hit time.
+ * <p>
+ * Hit time is cut into generations of one window each, and only the current and previous generation keep a
+ * Bloom filter, so memory stays constant. A repeat is caught when its first hit falls in the same or the
+ * preceding generation, i.e. suppression covers at least one and at most two windows. Hits older than the
+ * previous generation are let through unchecked. False positives drop about {@code false-positive-rate}
+ * of legitimate hits.
+ * <p>
+ * Generations advance with the server clock, not with hit timestamps. A hit up to one window ahead of the server
+ * clock counts towards the current generation; one further ahead is let through unchecked and never recorded, so
+ * a client with a wrong clock cannot clear the filters.
+ * <p>
+ * Checking and remembering are separate: a hit is {@link #record recorded} only once it has been stored, so the
+ * retry of a write that failed, or was turned away with 429, is not mistaken for a repeat.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.suppress.enabled", havingValue = "true")
+@Slf4j
+public class DuplicateHitFilter {
+    private final Clock clock;
+    private final long windowSeconds;
+    private final Counter suppressedCounter;
+    private long generation = Long.MIN_VALUE;
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    @Autowired
+    public DuplicateHitFilter(MeterRegistry meterRegistry,
+                              @Value("${stats.suppress.window-seconds:10}") long windowSeconds,
+                              @Value("${stats.suppress.expected-hits:100000}") long expectedHits,
+                              @Value("${stats.suppress.false-positive-rate:0.001}") double falsePositiveRate) {
+        this(Clock.systemDefaultZone(), meterRegistry, windowSeconds, expectedHits, falsePositiveRate);
+    }
+
+    DuplicateHitFilter(Clock clock, MeterRegistry meterRegistry, long windowSeconds, long expectedHits,
+                       double falsePositiveRate) {
+        this.clock = clock;
+        this.windowSeconds = windowSeconds;
+        this.suppressedCounter = meterRegistry.counter("stats.ingest.suppressed");
+        this.current = new BloomFilter(expectedHits, falsePositiveRate);
+        this.previous = new BloomFilter(expectedHits, falsePositiveRate);
+        log.info("Duplicate hit suppression enabled: window={}s, expectedHits={}, falsePositiveRate={}",
+                windowSeconds, expectedHits, falsePositiveRate);
+    }
+
+    /**
+     * The hits that are not repeats of stored hits or of an earlier hit in the same batch.
+     */
+    public List<EndpointHit> filter(List<EndpointHit> hits) {
+        Set<Long> batch = new HashSet<>();
+        List<EndpointHit> accepted = new ArrayList<>(hits.size());
+        for (EndpointHit hit : hits) {
+            if (isRepeat(hit)) {
+                continue;
+            }
+            if (!batch.add(hash(hit))) {
+                suppressedCounter.increment();
+                continue;
+            }
+            accepted.add(hit);
+        }
+        return accepted;
+    }
+
+    public synchronized boolean isRepeat(EndpointHit hit) {
+        long hitGeneration = generationOf(hit);
+        if (hitGeneration < generation - 1) {
+            return false;
+        }
+        long hash = hash(hit);
+        if (current.mightContainHash(hash) || previous.mightContainHash(hash)) {
+            suppressedCounter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remembers hits that have been stored.
+     */
+    public synchronized void record(List<EndpointHit> hits) {
+        for (EndpointHit hit : hits) {
+            long hitGeneration = generationOf(hit);
+            if (hitGeneration == generation) {
+                current.addHash(hash(hit));
+            } else if (hitGeneration == generation - 1) {
+                previous.addHash(hash(hit));
+            }
+        }
+    }
+
+    /**
+     * The generation a hit belongs to after moving to the server clock's generation: the current one for a hit
+     * at most one window ahead, {@link Long#MIN_VALUE} (unchecked) for one further ahead.
+     */
+    private long generationOf(EndpointHit hit) {
+        long now = generationOf(LocalDateTime.now(clock));
+        if (now > generation) {
+            rotate(now);
+        }
+        long hitGeneration = generationOf(hit.getTimestamp());
+        if (hitGeneration > generation + 1) {
+            return Long.MIN_VALUE;
+        }
+        return Math.min(hitGeneration, generation);
+    }
+
+    private long generationOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), windowSeconds);
+    }
+
+    private static long hash(EndpointHit hit) {
+        return HyperLogLog.hash(hit.getApp() + '\u0000' + hit.getUri() + '\u0000' + hit.getIp());
+    }
+
+    private void rotate(long nextGeneration) {
+        if (nextGeneration == generation + 1) {
+            BloomFilter reused = previous;
+            previous = current;
+            current = reused;
+            current.clear();
+        } else {
+            previous.clear();
+            current.clear();
+        }
+        generation = nextGeneration;
+    }
+}
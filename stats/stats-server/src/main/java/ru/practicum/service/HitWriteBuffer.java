@@ -0,0 +1,182 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.repository.StatsRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "write-behind")
+@Slf4j
+public class HitWriteBuffer {
+    private final BlockingQueue<PendingHit> queue;
+    private final int capacity;
+    private final StatsRepository statsRepository;
+    private final Optional<StatsResultCache> resultCache;
+    private final int flushSize;
+    private final long flushIntervalMillis;
+    private final boolean ackOnFlush;
+    private final Counter droppedCounter;
+    private final Counter flushedCounter;
+    private final Timer flushTimer;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public HitWriteBuffer(StatsRepository statsRepository,
+                          Optional<StatsResultCache> resultCache,
+                          MeterRegistry meterRegistry,
+                          @Value("${stats.ingest.capacity:10000}") int capacity,
+                          @Value("${stats.ingest.flush-size:500}") int flushSize,
+                          @Value("${stats.ingest.flush-interval-ms:200}") long flushIntervalMillis,
+                          @Value("${stats.ingest.ack:enqueue}") String ack) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.statsRepository = statsRepository;
+        this.resultCache = resultCache;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.ackOnFlush = "flush".equalsIgnoreCase(ack);
+        this.droppedCounter = meterRegistry.counter("stats.ingest.dropped");
+        this.flushedCounter = meterRegistry.counter("stats.ingest.flushed");
+        this.flushTimer = meterRegistry.timer("stats.ingest.flush.latency");
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.writer = new Thread(this::runWriter, "hit-write-behind");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        log.info("Write-behind ingestion enabled: capacity={}, flushSize={}, flushInterval={}ms, ackOnFlush={}",
+                queue.remainingCapacity(), flushSize, flushIntervalMillis, ackOnFlush);
+        writer.start();
+    }
+
+    public boolean isAckOnFlush() {
+        return ackOnFlush;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public CompletableFuture<Void> submit(EndpointHit hit) {
+        CompletableFuture<Void> ack = ackOnFlush ? new CompletableFuture<>() : null;
+        if (!queue.offer(new PendingHit(hit, ack))) {
+            droppedCounter.increment();
+            log.warn("Ingestion buffer is full, rejecting hit for uri {}", hit.getUri());
+            throw new IngestOverloadedException("Ingestion buffer is full");
+        }
+        return ack != null ? ack : CompletableFuture.completedFuture(null);
+    }
+
+    private void runWriter() {
+        List<PendingHit> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            flush(batch);
+        }
+    }
+
+    private void collect(List<PendingHit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0 || !running) {
+                return;
+            }
+            PendingHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next != null) {
+                batch.add(next);
+            }
+        }
+    }
+
+    private void flush(List<PendingHit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        store(batch);
+        batch.clear();
+    }
+
+    /**
+     * Writes the hits in one transaction. If it fails for a reason of its own, such as a hit the database rejects,
+     * the halves are retried separately so a poisoned hit only fails itself.
+     */
+    private void store(List<PendingHit> batch) {
+        List<EndpointHit> hits = batch.stream().map(PendingHit::hit).toList();
+        try {
+            flushTimer.record(() -> statsRepository.insertAll(hits));
+            flushedCounter.increment(hits.size());
+            // Only now are the hits visible to a cache load, so invalidating any earlier could be undone by one
+            resultCache.ifPresent(cache -> cache.invalidate(hits));
+            batch.forEach(pending -> pending.complete(null));
+        } catch (RuntimeException e) {
+            if (batch.size() > 1 && !isUnavailable(e)) {
+                log.warn("Failed to flush {} buffered hits, retrying in halves: {}", hits.size(), e.getMessage());
+                int middle = batch.size() / 2;
+                store(batch.subList(0, middle));
+                store(batch.subList(middle, batch.size()));
+                return;
+            }
+            droppedCounter.increment(hits.size());
+            log.error("Failed to flush {} buffered hits", hits.size(), e);
+            batch.forEach(pending -> pending.complete(e));
+        }
+    }
+
+    // The database itself is unreachable: every smaller batch would fail the same way
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private record PendingHit(EndpointHit hit, CompletableFuture<Void> ack) {
+        void complete(Throwable error) {
+            if (ack == null) {
+                return;
+            }
+            if (error == null) {
+                ack.complete(null);
+            } else {
+                ack.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.service;
+
+/**
+ * Hit ingestion is saturated; the client should retry later rather than immediately.
+ */
+public class IngestOverloadedException extends RuntimeException {
+    public IngestOverloadedException(String message) {
+        super(message);
+    }
+}
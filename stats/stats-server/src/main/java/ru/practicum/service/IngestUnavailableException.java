@@ -0,0 +1,10 @@
+package ru.practicum.service;
+
+/**
+ * A buffered hit could not be stored; nothing was written and the client may retry.
+ */
+public class IngestUnavailableException extends RuntimeException {
+    public IngestUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
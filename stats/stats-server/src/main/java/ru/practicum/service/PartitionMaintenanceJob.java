@@ -0,0 +1,114 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.Granularity;
+import ru.practicum.repository.HitPartitionRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Keeps {@code endpoint_hits} partitioned by timestamp: pre-creates upcoming partitions and drops whole
+ * partitions that fall out of the retention window. The raw watermark is moved to the retention cutoff first, so
+ * reads before it go to the rollups, or are rejected when they need raw hits, instead of undercounting.
+ */
+@Component
+@Slf4j
+public class PartitionMaintenanceJob {
+    private static final String PREFIX = HitPartitionRepository.PARENT + "_p";
+    private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final HitPartitionRepository partitionRepository;
+    private final CompactionRepository compactionRepository;
+    private final ChronoUnit period;
+    private final int premake;
+    private final int retentionDays;
+
+    public PartitionMaintenanceJob(HitPartitionRepository partitionRepository,
+                                   CompactionRepository compactionRepository,
+                                   @Value("${stats.partition.period:MONTH}") String period,
+                                   @Value("${stats.partition.premake:3}") int premake,
+                                   @Value("${stats.partition.retention-days:0}") int retentionDays) {
+        this.partitionRepository = partitionRepository;
+        this.compactionRepository = compactionRepository;
+        this.period = "DAY".equalsIgnoreCase(period) ? ChronoUnit.DAYS : ChronoUnit.MONTHS;
+        this.premake = premake;
+        this.retentionDays = retentionDays;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partition.cron:0 15 0 * * *}")
+    public void maintain() {
+        try {
+            createUpcoming();
+            dropExpired();
+        } catch (RuntimeException e) {
+            log.error("Partition maintenance failed", e);
+        }
+    }
+
+    private void createUpcoming() {
+        LocalDate from = periodStart(LocalDate.now());
+        for (int i = 0; i <= premake; i++) {
+            LocalDate to = from.plus(1, period);
+            partitionRepository.createPartition(partitionName(from), from.atStartOfDay(), to.atStartOfDay());
+            from = to;
+        }
+    }
+
+    private void dropExpired() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        compactionRepository.advance(Granularity.RAW, cutoff);
+        compactionRepository.refreshWatermarks();
+        for (String partition : partitionRepository.findPartitions()) {
+            if (!partition.startsWith(PREFIX)) {
+                continue;
+            }
+            LocalDate end = parseEnd(partition.substring(PREFIX.length()));
+            if (end != null && !end.atStartOfDay().isAfter(cutoff)) {
+                log.info("Dropping expired hits partition {}", partition);
+                partitionRepository.dropPartition(partition);
+            }
+        }
+        int deleted = partitionRepository.deleteFromDefaultBefore(cutoff);
+        if (deleted > 0) {
+            log.info("Deleted {} expired hits from the default partition", deleted);
+        }
+    }
+
+    private LocalDate periodStart(LocalDate date) {
+        return period == ChronoUnit.DAYS ? date : date.with(TemporalAdjusters.firstDayOfMonth());
+    }
+
+    private String partitionName(LocalDate start) {
+        return PREFIX + start.format(period == ChronoUnit.DAYS ? DAY_SUFFIX : MONTH_SUFFIX);
+    }
+
+    private LocalDate parseEnd(String suffix) {
+        // Partitions created under an earlier period setting are recognised by their suffix length
+        if (suffix.length() == 8) {
+            return LocalDate.parse(suffix, DAY_SUFFIX).plusDays(1);
+        }
+        if (suffix.length() == 6) {
+            return LocalDate.parse(suffix + "01", DAY_SUFFIX).plusMonths(1);
+        }
+        return null;
+    }
+}
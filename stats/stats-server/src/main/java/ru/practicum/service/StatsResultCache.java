@@ -0,0 +1,301 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.repository.AppUri;
+import ru.practicum.repository.BucketCount;
+import ru.practicum.repository.BucketSketch;
+import ru.practicum.repository.Granularity;
+import ru.practicum.repository.StatsCriteria;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.repository.UriFilter;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Per-(uri, bucket, unique) results for closed time buckets, which no longer change once their day is over.
+ * A range is served from whole calendar months and days that are closed, plus a fresh query for the open
+ * remainder at either edge. Entries are evicted least recently used once their estimated size exceeds
+ * {@code stats.cache.max-bytes}.
+ * <p>
+ * Hits ingested through this instance for an already closed day evict that day's entries; late hits written
+ * by another instance stay invisible here until evicted. A load that was already running when one of its keys was
+ * evicted may have read the table before the hit, so it does not cache that key.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.cache.enabled", havingValue = "true")
+public class StatsResultCache {
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final StatsRepository statsRepository;
+    private final Duration closeDelay;
+    private final long maxBytes;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<Key, Long> invalidatedAt = new HashMap<>();
+    private long bytes;
+    private long epoch;
+    private int loading;
+
+    public StatsResultCache(StatsRepository statsRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${stats.cache.close-delay-minutes:60}") long closeDelayMinutes,
+                            @Value("${stats.cache.max-bytes:67108864}") long maxBytes) {
+        this.statsRepository = statsRepository;
+        this.closeDelay = Duration.ofMinutes(closeDelayMinutes);
+        this.maxBytes = maxBytes;
+        this.hitCounter = meterRegistry.counter("stats.cache.hits");
+        this.missCounter = meterRegistry.counter("stats.cache.misses");
+        Gauge.builder("stats.cache.bytes", this, StatsResultCache::getBytes).register(meterRegistry);
+    }
+
+    /**
+     * Only exact URI lists are cached: prefix patterns match a changing set of URIs.
+     */
+    public static boolean isCacheable(UriFilter uris, boolean exact) {
+        return !exact && !uris.isAll() && uris.prefixes().isEmpty();
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean unique) {
+        LocalDateTime dayFrom = Granularity.DAY.ceil(start);
+        LocalDateTime dayTo = Granularity.DAY.floor(end);
+        LocalDateTime closedBefore = Granularity.DAY.floor(LocalDateTime.now().minus(closeDelay));
+        if (dayTo.isAfter(closedBefore)) {
+            dayTo = closedBefore;
+        }
+        if (!dayFrom.isBefore(dayTo)) {
+            return statsRepository.getStats(new StatsCriteria(start, end, uris, null, unique, false));
+        }
+
+        List<Bucket> buckets = buckets(dayFrom.toLocalDate(), dayTo.toLocalDate());
+        Map<AppUri, Long> counts = new HashMap<>();
+        Map<AppUri, HyperLogLog> sketches = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String uri : new TreeSet<>(uris.uris())) {
+            List<Entry> cached = lookup(uri, buckets, unique);
+            if (cached == null) {
+                missing.add(uri);
+            } else {
+                cached.forEach(entry -> entry.addTo(uri, counts, sketches));
+            }
+        }
+        if (!missing.isEmpty()) {
+            load(missing, buckets, unique, dayFrom, dayTo).forEach((key, entry) ->
+                    entry.addTo(key.uri(), counts, sketches));
+        }
+
+        // The open edges: the partial first day, and everything from the first day that is not closed yet
+        List<StatsCriteria> edges = new ArrayList<>();
+        if (start.isBefore(dayFrom)) {
+            edges.add(new StatsCriteria(start, dayFrom.minus(1, ChronoUnit.MICROS), uris, null, unique, false));
+        }
+        if (!end.isBefore(dayTo)) {
+            edges.add(new StatsCriteria(dayTo, end, uris, null, unique, false));
+        }
+        for (StatsCriteria edge : edges) {
+            if (unique) {
+                statsRepository.getSketches(edge).forEach((key, sketch) -> sketches.merge(key, sketch,
+                        HyperLogLog::merge));
+            } else {
+                statsRepository.getStats(edge).forEach(stat ->
+                        counts.merge(new AppUri(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+            }
+        }
+        if (unique) {
+            sketches.forEach((key, sketch) -> counts.put(key, sketch.estimate()));
+        }
+        return counts.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    public void invalidate(Collection<EndpointHit> hits) {
+        LocalDateTime closedBefore = Granularity.DAY.floor(LocalDateTime.now().minus(closeDelay));
+        for (EndpointHit hit : hits) {
+            if (!hit.getTimestamp().isBefore(closedBefore)) {
+                continue;
+            }
+            LocalDate day = hit.getTimestamp().toLocalDate();
+            synchronized (this) {
+                epoch++;
+                for (boolean unique : new boolean[]{false, true}) {
+                    invalidate(new Key(hit.getUri(), new Bucket(day, false), unique));
+                    invalidate(new Key(hit.getUri(), new Bucket(day.withDayOfMonth(1), true), unique));
+                }
+            }
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private synchronized List<Entry> lookup(String uri, List<Bucket> buckets, boolean unique) {
+        List<Entry> found = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            Entry entry = entries.get(new Key(uri, bucket, unique));
+            if (entry == null) {
+                missCounter.increment();
+                return null;
+            }
+            found.add(entry);
+        }
+        hitCounter.increment();
+        return found;
+    }
+
+    private Map<Key, Entry> load(List<String> uris, List<Bucket> buckets, boolean unique,
+                                 LocalDateTime dayFrom, LocalDateTime dayTo) {
+        long startEpoch;
+        synchronized (this) {
+            startEpoch = epoch;
+            loading++;
+        }
+        try {
+            Map<Key, Entry> loaded = query(uris, buckets, unique, dayFrom, dayTo);
+            synchronized (this) {
+                loaded.forEach((key, entry) -> {
+                    if (invalidatedAt.getOrDefault(key, Long.MIN_VALUE) <= startEpoch) {
+                        put(key, entry);
+                    }
+                });
+            }
+            return loaded;
+        } finally {
+            synchronized (this) {
+                if (--loading == 0) {
+                    invalidatedAt.clear();
+                }
+            }
+        }
+    }
+
+    private Map<Key, Entry> query(List<String> uris, List<Bucket> buckets, boolean unique,
+                                  LocalDateTime dayFrom, LocalDateTime dayTo) {
+        Map<Key, Map<String, Long>> counts = new HashMap<>();
+        Map<Key, Map<String, HyperLogLog>> sketches = new HashMap<>();
+        UriFilter filter = new UriFilter(uris, List.of());
+        if (unique) {
+            for (BucketSketch day : statsRepository.getDaySketches(filter, dayFrom, dayTo)) {
+                Key key = new Key(day.uri(), bucketOf(day.bucket().toLocalDate(), buckets), true);
+                sketches.computeIfAbsent(key, k -> new HashMap<>())
+                        .merge(day.app(), day.sketch(), HyperLogLog::merge);
+            }
+        } else {
+            for (BucketCount day : statsRepository.getDayCounts(filter, dayFrom, dayTo)) {
+                Key key = new Key(day.uri(), bucketOf(day.bucket().toLocalDate(), buckets), false);
+                counts.computeIfAbsent(key, k -> new HashMap<>()).merge(day.app(), day.hits(), Long::sum);
+            }
+        }
+        Map<Key, Entry> loaded = new HashMap<>();
+        for (String uri : uris) {
+            for (Bucket bucket : buckets) {
+                // Empty buckets are cached too, otherwise URIs without hits would always miss
+                Key key = new Key(uri, bucket, unique);
+                Map<String, byte[]> serialized = new HashMap<>();
+                sketches.getOrDefault(key, Map.of()).forEach((app, sketch) -> serialized.put(app, sketch.toBytes()));
+                loaded.put(key, new Entry(Map.copyOf(counts.getOrDefault(key, Map.of())), Map.copyOf(serialized)));
+            }
+        }
+        return loaded;
+    }
+
+    private void put(Key key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        bytes += entry.weight(key);
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            bytes -= eldest.getValue().weight(eldest.getKey());
+            iterator.remove();
+        }
+    }
+
+    private void invalidate(Key key) {
+        remove(key);
+        if (loading > 0) {
+            invalidatedAt.put(key, epoch);
+        }
+    }
+
+    private void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.weight(key);
+        }
+    }
+
+    /**
+     * Whole calendar months where they fit, single days at the edges.
+     */
+    static List<Bucket> buckets(LocalDate from, LocalDate to) {
+        List<Bucket> buckets = new ArrayList<>();
+        LocalDate day = from;
+        while (day.isBefore(to)) {
+            LocalDate nextMonth = day.withDayOfMonth(1).plusMonths(1);
+            if (day.getDayOfMonth() == 1 && !nextMonth.isAfter(to)) {
+                buckets.add(new Bucket(day, true));
+                day = nextMonth;
+            } else {
+                buckets.add(new Bucket(day, false));
+                day = day.plusDays(1);
+            }
+        }
+        return buckets;
+    }
+
+    private static Bucket bucketOf(LocalDate day, List<Bucket> buckets) {
+        Bucket month = new Bucket(day.withDayOfMonth(1), true);
+        return buckets.contains(month) ? month : new Bucket(day, false);
+    }
+
+    record Bucket(LocalDate start, boolean month) {
+    }
+
+    private record Key(String uri, Bucket bucket, boolean unique) {
+    }
+
+    /**
+     * Hits or sketches per app. Sketches are kept serialized, which is sparse and far smaller for quiet URIs.
+     */
+    private record Entry(Map<String, Long> counts, Map<String, byte[]> sketches) {
+        void addTo(String uri, Map<AppUri, Long> totals, Map<AppUri, HyperLogLog> merged) {
+            counts.forEach((app, hits) -> totals.merge(new AppUri(app, uri), hits, Long::sum));
+            sketches.forEach((app, bytes) -> merged.merge(new AppUri(app, uri), HyperLogLog.fromBytes(bytes),
+                    HyperLogLog::merge));
+        }
+
+        long weight(Key key) {
+            long weight = ENTRY_OVERHEAD + 2L * key.uri().length();
+            for (String app : counts.keySet()) {
+                weight += 64 + 2L * app.length();
+            }
+            for (Map.Entry<String, byte[]> sketch : sketches.entrySet()) {
+                weight += 64 + 2L * sketch.getKey().length() + sketch.getValue().length;
+            }
+            return weight;
+        }
+    }
+}
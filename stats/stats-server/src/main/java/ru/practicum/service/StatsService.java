@@ -1,13 +1,48 @@
 package ru.practicum.service;
 
 import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsTimeSeries;
 import ru.practicum.dto.ViewStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
+    int MAX_TOP_LIMIT = 1000;
+
     void saveHit(EndpointHit hit);
 
-    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    void saveHits(List<EndpointHit> hits);
+
+    /**
+     * URIs are matched exactly.
+     */
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, Boolean exact);
+
+    /**
+     * As {@link #getStats}, but a URI ending with {@code *} matches every URI with that prefix.
+     */
+    List<ViewStats> queryStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                               Boolean exact);
+
+    /**
+     * URIs are matched exactly.
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, Boolean exact,
+                     Consumer<ViewStats> consumer);
+
+    /**
+     * The checks {@link #streamStats} would fail with, for callers that must answer before the first row.
+     */
+    void checkStats(LocalDateTime start, LocalDateTime end, Boolean unique, Boolean exact);
+
+    /**
+     * {@code limit} must be between 1 and {@link #MAX_TOP_LIMIT}.
+     */
+    List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, List<String> uris, String app,
+                                Boolean unique, Boolean exact, int limit);
+
+    StatsTimeSeries getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String app,
+                                  String interval);
 }
@@ -4,37 +4,222 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.repository.AppUri;
+import ru.practicum.repository.BucketCount;
+import ru.practicum.repository.Granularity;
+import ru.practicum.repository.IpAddresses;
+import ru.practicum.repository.StatsCriteria;
 import ru.practicum.repository.StatsRepository;
+import ru.practicum.repository.UriFilter;
 import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.StatsTimeSeries;
 import ru.practicum.dto.ViewStats;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class StatsServiceImpl implements StatsService {
+    private static final Comparator<ViewStats> BY_HITS = Comparator.comparing(ViewStats::getHits)
+            .thenComparing(ViewStats::getUri, Comparator.reverseOrder());
+    private static final int MAX_TIME_SERIES_BUCKETS = 10_000;
+    private static final int MAX_HIT_ID_LENGTH = 64;
+    private static final int MAX_NAME_LENGTH = 200;
+
     private final StatsRepository statsRepository;
+    private final Optional<HitWriteBuffer> writeBuffer;
+    private final Optional<DuplicateHitFilter> duplicateHitFilter;
+    private final Optional<StatsResultCache> resultCache;
 
-    @Transactional
     @Override
     public void saveHit(EndpointHit hit) {
-        statsRepository.save(hit);
+        prepare(hit);
+        if (duplicateHitFilter.isPresent() && duplicateHitFilter.get().isRepeat(hit)) {
+            return;
+        }
+        if (writeBuffer.isEmpty()) {
+            statsRepository.insertAll(List.of(hit));
+            duplicateHitFilter.ifPresent(filter -> filter.record(List.of(hit)));
+            resultCache.ifPresent(cache -> cache.invalidate(List.of(hit)));
+            return;
+        }
+        // In ack-on-enqueue mode the returned future is already completed, so join() never waits on the writer.
+        // A full buffer throws IngestOverloadedException (429), a failed flush IngestUnavailableException (503)
+        // The buffer invalidates the result cache itself once the hit is flushed
+        try {
+            writeBuffer.get().submit(hit).join();
+        } catch (CompletionException e) {
+            throw new IngestUnavailableException("Failed to store hit", e.getCause());
+        }
+        duplicateHitFilter.ifPresent(filter -> filter.record(List.of(hit)));
     }
 
-    @Transactional(readOnly = true)
+    @Override
+    public void saveHits(List<EndpointHit> hits) {
+        log.debug("Saving batch of {} hits", hits.size());
+        hits.forEach(this::prepare);
+        List<EndpointHit> accepted = duplicateHitFilter.map(filter -> filter.filter(hits)).orElse(hits);
+        statsRepository.insertAll(accepted);
+        duplicateHitFilter.ifPresent(filter -> filter.record(accepted));
+        resultCache.ifPresent(cache -> cache.invalidate(hits));
+    }
+
+    // Checked before a hit is buffered: one that fails in the background would have been acked already
+    private void prepare(EndpointHit hit) {
+        if (hit.getApp() == null || hit.getApp().isBlank() || hit.getApp().length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("App must be 1 to " + MAX_NAME_LENGTH + " characters");
+        }
+        if (hit.getUri() == null || hit.getUri().isBlank() || hit.getUri().length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Uri must be 1 to " + MAX_NAME_LENGTH + " characters");
+        }
+        if (hit.getTimestamp() == null) {
+            throw new IllegalArgumentException("Timestamp must not be empty");
+        }
+        if (hit.getHitId() != null && (hit.getHitId().isBlank() || hit.getHitId().length() > MAX_HIT_ID_LENGTH)) {
+            throw new IllegalArgumentException("Hit id must be 1 to " + MAX_HIT_ID_LENGTH + " characters");
+        }
+        hit.setIp(IpAddresses.normalize(hit.getIp()));
+    }
+
+    // No transaction: a long range fans out into slices on their own connections, see StatsRepository.getStats
     @Override
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
-                                    List<String> uris, Boolean unique) {
+                                    List<String> uris, Boolean unique, Boolean exact) {
+        return getStats(start, end, uris, UriFilter.exact(uris), unique, exact);
+    }
+
+    @Override
+    public List<ViewStats> queryStats(LocalDateTime start, LocalDateTime end,
+                                      List<String> uris, Boolean unique, Boolean exact) {
+        return getStats(start, end, uris, UriFilter.of(uris), unique, exact);
+    }
+
+    private List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UriFilter uriFilter,
+                                     Boolean unique, Boolean exact) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Start date must be before end date");
+        }
+
+        boolean uniqueFlag = unique != null ? unique : false;
+        boolean exactFlag = exact != null ? exact : false;
+        log.debug("Getting stats from {} to {}, uris: {}, unique: {}, exact: {}",
+                start, end, uris, uniqueFlag, exactFlag);
+
+        if (resultCache.isPresent() && StatsResultCache.isCacheable(uriFilter, exactFlag)) {
+            return resultCache.get().getStats(start, end, uriFilter, uniqueFlag);
+        }
+        return statsRepository.getStats(new StatsCriteria(start, end, uriFilter, null, uniqueFlag, exactFlag));
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                            Boolean unique, Boolean exact, Consumer<ViewStats> consumer) {
         if (start.isAfter(end)) {
             throw new IllegalArgumentException("Start date must be before end date");
         }
 
         boolean uniqueFlag = unique != null ? unique : false;
-        log.debug("Getting stats from {} to {}, uris: {}, unique: {}",
-                start, end, uris, uniqueFlag);
+        boolean exactFlag = exact != null ? exact : false;
+        log.debug("Streaming stats from {} to {}, uris: {}, unique: {}, exact: {}",
+                start, end, uris, uniqueFlag, exactFlag);
+
+        statsRepository.streamStats(new StatsCriteria(start, end, UriFilter.exact(uris), null, uniqueFlag,
+                exactFlag), consumer);
+    }
+
+    @Override
+    public void checkStats(LocalDateTime start, LocalDateTime end, Boolean unique, Boolean exact) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Start date must be before end date");
+        }
+        statsRepository.checkExact(new StatsCriteria(start, end, UriFilter.of(null), null,
+                unique != null && unique, exact != null && exact));
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, List<String> uris, String app,
+                                       Boolean unique, Boolean exact, int limit) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Start date must be before end date");
+        }
+        if (limit <= 0 || limit > MAX_TOP_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_TOP_LIMIT);
+        }
+
+        boolean uniqueFlag = unique != null ? unique : false;
+        boolean exactFlag = exact != null ? exact : false;
+        log.debug("Getting top {} stats from {} to {}, uris: {}, app: {}, unique: {}, exact: {}",
+                limit, start, end, uris, app, uniqueFlag, exactFlag);
+
+        // Min-heap of the best rows so far: the weakest is evicted, so memory stays at limit rows
+        PriorityQueue<ViewStats> top = new PriorityQueue<>(limit + 1, BY_HITS);
+        statsRepository.forEachStat(new StatsCriteria(start, end, UriFilter.of(uris), app, uniqueFlag, exactFlag),
+                stat -> {
+                    if (top.size() < limit) {
+                        top.add(stat);
+                    } else if (BY_HITS.compare(stat, top.peek()) > 0) {
+                        top.poll();
+                        top.add(stat);
+                    }
+                });
+        List<ViewStats> result = new ArrayList<>(top);
+        result.sort(BY_HITS.reversed());
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public StatsTimeSeries getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String app,
+                                         String interval) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Start date must be before end date");
+        }
+        Granularity granularity = parseInterval(interval);
+        LocalDateTime first = granularity.floor(start);
+        long bucketCount = granularity.getUnit().between(first, granularity.floor(end)) + 1;
+        if (bucketCount > MAX_TIME_SERIES_BUCKETS) {
+            throw new IllegalArgumentException("Too many buckets: " + bucketCount + ", use a coarser interval");
+        }
+        log.debug("Getting {} time series from {} to {}, uris: {}, app: {}", granularity, start, end, uris, app);
+
+        List<LocalDateTime> timestamps = new ArrayList<>((int) bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            timestamps.add(first.plus(i, granularity.getUnit()));
+        }
+        Map<AppUri, long[]> counts = new HashMap<>();
+        List<BucketCount> buckets = statsRepository.getBucketCounts(
+                new StatsCriteria(start, end, UriFilter.of(uris), app, false, false), granularity);
+        for (BucketCount bucket : buckets) {
+            int index = (int) granularity.getUnit().between(first, bucket.bucket());
+            long[] series = counts.computeIfAbsent(new AppUri(bucket.app(), bucket.uri()),
+                    key -> new long[(int) bucketCount]);
+            series[index] += bucket.hits();
+        }
+        List<StatsTimeSeries.Series> series = counts.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(AppUri::uri).thenComparing(AppUri::app)))
+                .map(entry -> new StatsTimeSeries.Series(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .toList();
+        return new StatsTimeSeries(granularity.name().toLowerCase(), timestamps, series);
+    }
 
-        return statsRepository.getStats(start, end, uris, uniqueFlag);
+    private Granularity parseInterval(String interval) {
+        return switch (interval.toLowerCase()) {
+            case "minute" -> Granularity.MINUTE;
+            case "hour" -> Granularity.HOUR;
+            case "day" -> Granularity.DAY;
+            default -> throw new IllegalArgumentException("Interval must be one of minute, hour, day");
+        };
     }
 }
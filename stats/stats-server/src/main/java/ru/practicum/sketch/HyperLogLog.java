@@ -0,0 +1,166 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog distinct counter with {@code 2^precision} one-byte registers.
+ * Standard error is about {@code 1.04 / sqrt(2^precision)}; small cardinalities fall back to linear counting
+ * and come out exact after rounding. Sketches serialize sparsely while few registers are set.
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Sketch precision must be between " + MIN_PRECISION +
+                    " and " + MAX_PRECISION + ", got " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merges {@code other} into a sketch of the lower of the two precisions, which may be this instance.
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        HyperLogLog target = precision <= other.precision ? this : fold(other.precision);
+        HyperLogLog source = other.precision == target.precision ? other : other.fold(target.precision);
+        for (int i = 0; i < target.registers.length; i++) {
+            if (target.registers[i] < source.registers[i]) {
+                target.registers[i] = source.registers[i];
+            }
+        }
+        return target;
+    }
+
+    public HyperLogLog fold(int newPrecision) {
+        if (newPrecision == precision) {
+            return this;
+        }
+        if (newPrecision > precision) {
+            throw new IllegalArgumentException("Cannot raise sketch precision from " + precision +
+                    " to " + newPrecision);
+        }
+        HyperLogLog folded = new HyperLogLog(newPrecision);
+        int shift = precision - newPrecision;
+        int lowMask = (1 << shift) - 1;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] == 0) {
+                continue;
+            }
+            int low = i & lowMask;
+            int rank = low == 0
+                    ? shift + registers[i]
+                    : Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+            int index = i >>> shift;
+            if (folded.registers[index] < rank) {
+                folded.registers[index] = (byte) rank;
+            }
+        }
+        return folded;
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int set = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                set++;
+            }
+        }
+        if (set * Integer.BYTES < registers.length) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 + Integer.BYTES + set * Integer.BYTES);
+            buffer.put((byte) precision).put(SPARSE).putInt(set);
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    buffer.putInt(i << 6 | registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+        buffer.put((byte) precision).put(DENSE).put(registers);
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        byte encoding = buffer.get();
+        if (encoding == SPARSE) {
+            int set = buffer.getInt();
+            for (int i = 0; i < set; i++) {
+                int entry = buffer.getInt();
+                sketch.registers[entry >>> 6] = (byte) (entry & 0x3F);
+            }
+        } else {
+            buffer.get(sketch.registers);
+        }
+        return sketch;
+    }
+
+    public static long hash(String value) {
+        // FNV-1a over the UTF-8 bytes followed by the MurmurHash3 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
@@ -1,9 +1,164 @@
-DROP TABLE IF EXISTS endpoint_hits CASCADE;
+-- Earlier versions kept endpoint_hits as a plain table; move it aside so it can be re-created partitioned
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass(''endpoint_hits'') AND relkind = ''r'') THEN
+        ALTER TABLE endpoint_hits RENAME TO endpoint_hits_legacy;
+    END IF;
+END';
 
-CREATE TABLE IF NOT EXISTS endpoint_hits (
+CREATE TABLE IF NOT EXISTS hit_apps (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(200) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app VARCHAR(200),
-    uri VARCHAR(200),
-    ip VARCHAR(200),
-    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
-);
\ No newline at end of file
+    uri VARCHAR(200) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_minute (
+    app VARCHAR(200) NOT NULL,
+    uri VARCHAR(200) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri, bucket, app)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour (
+    app VARCHAR(200) NOT NULL,
+    uri VARCHAR(200) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri, bucket, app)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day (
+    app VARCHAR(200) NOT NULL,
+    uri VARCHAR(200) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri, bucket, app)
+);
+
+CREATE TABLE IF NOT EXISTS hits_sketch_day (
+    app VARCHAR(200) NOT NULL,
+    uri VARCHAR(200) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (uri, bucket, app)
+);
+
+-- Migrated IPs that do not parse become 0.0.0.0 instead of aborting the migration; earlier versions stored any text
+CREATE OR REPLACE FUNCTION stats_try_inet(value TEXT) RETURNS INET LANGUAGE plpgsql IMMUTABLE AS '
+BEGIN
+    RETURN COALESCE(value::inet, ''0.0.0.0''::inet);
+EXCEPTION WHEN others THEN
+    RETURN ''0.0.0.0''::inet;
+END';
+
+-- Days whose hits were migrated in bulk, or whose sketch deltas may have been lost by a crash, and still have to
+-- be folded into hits_sketch_day (by CompactionJob)
+CREATE TABLE IF NOT EXISTS sketch_backfill_days (
+    day DATE PRIMARY KEY
+);
+
+-- Partitioned endpoint_hits that still stores app, uri and ip as text is re-encoded in place. Rollups only ever
+-- grow to the raw counts (GREATEST), so hits already counted by an earlier version are not counted twice
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = ''endpoint_hits'' AND column_name = ''app'') THEN
+        INSERT INTO hit_apps (name) SELECT DISTINCT app FROM endpoint_hits WHERE app IS NOT NULL
+        ON CONFLICT (name) DO NOTHING;
+        INSERT INTO hit_uris (uri) SELECT DISTINCT uri FROM endpoint_hits WHERE uri IS NOT NULL
+        ON CONFLICT (uri) DO NOTHING;
+        ALTER TABLE endpoint_hits ADD COLUMN app_id INTEGER, ADD COLUMN uri_id INTEGER;
+        UPDATE endpoint_hits h SET app_id = a.id FROM hit_apps a WHERE a.name = h.app;
+        UPDATE endpoint_hits h SET uri_id = u.id FROM hit_uris u WHERE u.uri = h.uri;
+        DELETE FROM endpoint_hits WHERE app_id IS NULL OR uri_id IS NULL;
+        INSERT INTO hits_rollup_minute (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''minute'', timestamp), COUNT(*) FROM endpoint_hits
+        WHERE app IS NOT NULL AND uri IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_minute.hits, EXCLUDED.hits);
+        INSERT INTO hits_rollup_hour (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''hour'', timestamp), COUNT(*) FROM endpoint_hits
+        WHERE app IS NOT NULL AND uri IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_hour.hits, EXCLUDED.hits);
+        INSERT INTO hits_rollup_day (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''day'', timestamp), COUNT(*) FROM endpoint_hits
+        WHERE app IS NOT NULL AND uri IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_day.hits, EXCLUDED.hits);
+        INSERT INTO sketch_backfill_days (day) SELECT DISTINCT timestamp::date FROM endpoint_hits
+        WHERE app IS NOT NULL AND uri IS NOT NULL ON CONFLICT (day) DO NOTHING;
+        ALTER TABLE endpoint_hits
+            DROP COLUMN app,
+            DROP COLUMN uri,
+            ALTER COLUMN app_id SET NOT NULL,
+            ALTER COLUMN uri_id SET NOT NULL,
+            ALTER COLUMN ip TYPE INET USING stats_try_inet(ip),
+            ALTER COLUMN ip SET NOT NULL;
+    END IF;
+END';
+
+CREATE SEQUENCE IF NOT EXISTS endpoint_hits_id_seq AS BIGINT;
+
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    id BIGINT NOT NULL DEFAULT nextval('endpoint_hits_id_seq'),
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+
+DO '
+BEGIN
+    IF to_regclass(''endpoint_hits_legacy'') IS NOT NULL THEN
+        INSERT INTO hit_apps (name) SELECT DISTINCT app FROM endpoint_hits_legacy WHERE app IS NOT NULL
+        ON CONFLICT (name) DO NOTHING;
+        INSERT INTO hit_uris (uri) SELECT DISTINCT uri FROM endpoint_hits_legacy WHERE uri IS NOT NULL
+        ON CONFLICT (uri) DO NOTHING;
+        INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp)
+        SELECT a.id, u.id, stats_try_inet(l.ip), l.timestamp
+        FROM endpoint_hits_legacy l
+        JOIN hit_apps a ON a.name = l.app
+        JOIN hit_uris u ON u.uri = l.uri
+        WHERE l.ip IS NOT NULL;
+        INSERT INTO hits_rollup_minute (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''minute'', timestamp), COUNT(*) FROM endpoint_hits_legacy
+        WHERE app IS NOT NULL AND uri IS NOT NULL AND ip IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_minute.hits, EXCLUDED.hits);
+        INSERT INTO hits_rollup_hour (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''hour'', timestamp), COUNT(*) FROM endpoint_hits_legacy
+        WHERE app IS NOT NULL AND uri IS NOT NULL AND ip IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_hour.hits, EXCLUDED.hits);
+        INSERT INTO hits_rollup_day (app, uri, bucket, hits)
+        SELECT app, uri, date_trunc(''day'', timestamp), COUNT(*) FROM endpoint_hits_legacy
+        WHERE app IS NOT NULL AND uri IS NOT NULL AND ip IS NOT NULL GROUP BY 1, 2, 3
+        ON CONFLICT (uri, bucket, app) DO UPDATE SET hits = GREATEST(hits_rollup_day.hits, EXCLUDED.hits);
+        INSERT INTO sketch_backfill_days (day) SELECT DISTINCT timestamp::date FROM endpoint_hits_legacy
+        WHERE app IS NOT NULL AND uri IS NOT NULL AND ip IS NOT NULL ON CONFLICT (day) DO NOTHING;
+        DROP TABLE endpoint_hits_legacy;
+    END IF;
+END';
+
+CREATE TABLE IF NOT EXISTS ingested_hit_ids (
+    hit_id VARCHAR(64) PRIMARY KEY,
+    seen_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE TABLE IF NOT EXISTS compaction_watermarks (
+    tier VARCHAR(16) PRIMARY KEY,
+    available_from TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_uris_prefix ON hit_uris (uri varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_rollup_minute_bucket ON hits_rollup_minute (bucket);
+CREATE INDEX IF NOT EXISTS idx_rollup_hour_bucket ON hits_rollup_hour (bucket);
+CREATE INDEX IF NOT EXISTS idx_rollup_day_bucket ON hits_rollup_day (bucket);
+CREATE INDEX IF NOT EXISTS idx_sketch_day_bucket ON hits_sketch_day (bucket);
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_timestamp ON endpoint_hits (timestamp);
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_uri_timestamp ON endpoint_hits (uri_id, timestamp);
+CREATE INDEX IF NOT EXISTS idx_ingested_hit_ids_seen_at ON ingested_hit_ids (seen_at);
@@ -0,0 +1,105 @@
+package ru.practicum.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.practicum.service.HitWriteBuffer;
+
+import javax.sql.DataSource;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdmissionFilterTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void rejectsWritesWhileTheQueueIsAboveHighWater() throws Exception {
+        HitWriteBuffer writeBuffer = mock(HitWriteBuffer.class);
+        when(writeBuffer.getCapacity()).thenReturn(100);
+        when(writeBuffer.getQueueDepth()).thenReturn(80);
+        AdmissionFilter filter = filter(Optional.of(writeBuffer), mock(DataSource.class), 4);
+        FilterChain chain = mock(FilterChain.class);
+
+        MockHttpServletResponse response = perform(filter, "POST", "/hit", chain);
+
+        assertRejected(response);
+        verify(chain, never()).doFilter(any(), any());
+        assertEquals(1, registry.counter("stats.admission.rejected", "lane", "write").count());
+    }
+
+    @Test
+    void rejectsWritesWhileThreadsWaitForAConnection() throws Exception {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        when(pool.getThreadsAwaitingConnection()).thenReturn(1);
+        AdmissionFilter filter = filter(Optional.empty(), dataSource, 4);
+        FilterChain chain = mock(FilterChain.class);
+
+        assertRejected(perform(filter, "POST", "/hit/batch", chain));
+        verify(chain, never()).doFilter(any(), any());
+        // Reads keep their own lane
+        assertEquals(200, perform(filter, "GET", "/stats", chain).getStatus());
+        verify(chain).doFilter(any(), any());
+    }
+
+    @Test
+    void streamedResponseHoldsItsPermitUntilTheAsyncRequestCompletes() throws Exception {
+        AdmissionFilter filter = filter(Optional.empty(), mock(DataSource.class), 1);
+        MockHttpServletRequest streamed = new MockHttpServletRequest("POST", "/hit");
+        streamed.setAsyncSupported(true);
+        filter.doFilter(streamed, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        FilterChain chain = mock(FilterChain.class);
+        assertRejected(perform(filter, "POST", "/hit", chain));
+
+        streamed.getAsyncContext().complete();
+
+        assertEquals(200, perform(filter, "POST", "/hit", chain).getStatus());
+        verify(chain, times(1)).doFilter(any(), any());
+    }
+
+    @Test
+    void leavesOtherPathsAlone() throws Exception {
+        HitWriteBuffer writeBuffer = mock(HitWriteBuffer.class);
+        when(writeBuffer.getCapacity()).thenReturn(100);
+        when(writeBuffer.getQueueDepth()).thenReturn(100);
+        AdmissionFilter filter = filter(Optional.of(writeBuffer), mock(DataSource.class), 0);
+        FilterChain chain = mock(FilterChain.class);
+
+        MockHttpServletResponse response = perform(filter, "GET", "/actuator/health", chain);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.RETRY_AFTER));
+        verify(chain).doFilter(any(), any());
+    }
+
+    private AdmissionFilter filter(Optional<HitWriteBuffer> writeBuffer, DataSource dataSource, int writePermits) {
+        return new AdmissionFilter(writeBuffer, dataSource, registry, writePermits, 2, 0, 0, 0.8, 3);
+    }
+
+    private MockHttpServletResponse perform(AdmissionFilter filter, String method, String path, FilterChain chain)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(method, path), response, chain);
+        return response;
+    }
+
+    private void assertRejected(MockHttpServletResponse response) {
+        assertEquals(429, response.getStatus());
+        assertEquals("3", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+}
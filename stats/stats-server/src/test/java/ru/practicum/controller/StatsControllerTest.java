@@ -0,0 +1,134 @@
+package ru.practicum.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.DateFormatConfig;
+import ru.practicum.HitWireFormatConfig;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.ViewStats;
+import ru.practicum.dto.wire.HitCodec;
+import ru.practicum.service.IngestUnavailableException;
+import ru.practicum.service.StatsService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = StatsController.class, properties = "stats.admission.enabled=false")
+@Import({HitWireFormatConfig.class, DateFormatConfig.class})
+class StatsControllerTest {
+    private static final String START = "2024-01-01 00:00:00";
+    private static final String END = "2024-12-31 23:59:59";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private StatsService statsService;
+
+    @Test
+    void getStatsWithWildcardAcceptReturnsJson() throws Exception {
+        when(statsService.getStats(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/1", 3L)));
+
+        mockMvc.perform(get("/stats").param("start", START).param("end", END).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].uri").value("/events/1"))
+                .andExpect(jsonPath("$[0].hits").value(3));
+    }
+
+    @Test
+    void getStatsWithoutAcceptReturnsJsonForEmptyResult() throws Exception {
+        when(statsService.getStats(any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        mockMvc.perform(get("/stats").param("start", START).param("end", END))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    void getTopStatsWithWildcardAcceptReturnsJson() throws Exception {
+        when(statsService.getTopStats(any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/2", 5L)));
+
+        mockMvc.perform(get("/stats/top").param("start", START).param("end", END).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].hits").value(5));
+    }
+
+    @Test
+    void getTopStatsRejectsLimitAboveCap() throws Exception {
+        mockMvc.perform(get("/stats/top").param("start", START).param("end", END)
+                        .param("limit", String.valueOf(StatsService.MAX_TOP_LIMIT + 1)))
+                .andExpect(status().isBadRequest());
+
+        verify(statsService, never()).getTopStats(any(), any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void queryStatsWithWildcardAcceptReturnsJson() throws Exception {
+        when(statsService.queryStats(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/1", 3L)));
+
+        mockMvc.perform(post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"start\":\"" + START + "\",\"end\":\"" + END + "\",\"uris\":[\"/events/1\"]}")
+                        .accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].uri").value("/events/1"));
+    }
+
+    @Test
+    void saveHitsAcceptsBinaryBody() throws Exception {
+        EndpointHit hit = EndpointHit.builder()
+                .hitId("a1")
+                .app("ewm-main-service")
+                .uri("/events/1")
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.of(2024, 5, 1, 12, 0))
+                .build();
+
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(HitCodec.MEDIA_TYPE)
+                        .content(HitCodec.encode(List.of(hit))))
+                .andExpect(status().isCreated());
+
+        verify(statsService).saveHits(anyList());
+    }
+
+    @Test
+    void saveHitReturnsServiceUnavailableWhenFlushFails() throws Exception {
+        doThrow(new IngestUnavailableException("Failed to store hit", new IllegalStateException("db down")))
+                .when(statsService).saveHit(any());
+
+        mockMvc.perform(post("/hit")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\"," +
+                                "\"timestamp\":\"2024-05-01 12:00:00\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+}
@@ -0,0 +1,106 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HitRollupRepositoryTest {
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final HitRollupRepository repository = new HitRollupRepository(jdbcTemplate, transactionTemplate, 0);
+    private final List<String> tables = new ArrayList<>();
+    private final List<List<String>> rows = new ArrayList<>();
+    private int failures;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        doAnswer(invocation -> {
+            if (failures > 0) {
+                failures--;
+                throw new CannotAcquireLockException("deadlock detected");
+            }
+            String sql = invocation.getArgument(0);
+            Collection<Map.Entry<BucketKey, Long>> batch = invocation.getArgument(1);
+            tables.add(sql.substring("INSERT INTO ".length(), sql.indexOf(' ', "INSERT INTO ".length())));
+            rows.add(batch.stream()
+                    .map(row -> row.getKey().uri() + "@" + row.getKey().bucket() + "=" + row.getValue())
+                    .toList());
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    @Test
+    void aggregatesHitsPerBucketAndWritesTiersInKeyOrder() {
+        repository.addAll(List.of(
+                hit("/events/2", NOON.plusSeconds(30)),
+                hit("/events/1", NOON.plusMinutes(1)),
+                hit("/events/1", NOON.plusSeconds(10)),
+                hit("/events/1", NOON.plusSeconds(20))));
+
+        assertEquals(List.of("hits_rollup_minute", "hits_rollup_hour", "hits_rollup_day"), tables);
+        assertEquals(List.of("/events/1@2024-05-01T12:00=2", "/events/1@2024-05-01T12:01=1",
+                "/events/2@2024-05-01T12:00=1"), rows.get(0));
+        assertEquals(List.of("/events/1@2024-05-01T12:00=3", "/events/2@2024-05-01T12:00=1"), rows.get(1));
+        assertEquals(List.of("/events/1@2024-05-01T00:00=3", "/events/2@2024-05-01T00:00=1"), rows.get(2));
+    }
+
+    @Test
+    void keepsDeltasOfAFailedFlushForTheNextOne() {
+        failures = 1;
+        repository.addAll(List.of(hit("/events/1", NOON)));
+        assertTrue(tables.isEmpty());
+
+        repository.addAll(List.of(hit("/events/1", NOON.plusSeconds(5))));
+
+        assertEquals(List.of("/events/1@2024-05-01T12:00=2"), rows.get(0));
+    }
+
+    @Test
+    void scheduledFlushStoresDeltasLeftByAFailure() {
+        failures = 1;
+        repository.addAll(List.of(hit("/events/1", NOON)));
+
+        repository.flushPending();
+
+        assertEquals(List.of("/events/1@2024-05-01T12:00=1"), rows.get(0));
+        tables.clear();
+        repository.flushPending();
+        assertTrue(tables.isEmpty());
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
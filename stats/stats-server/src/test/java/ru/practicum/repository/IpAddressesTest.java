@@ -0,0 +1,31 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IpAddressesTest {
+
+    @Test
+    void normalizesIpv4Literals() {
+        assertEquals("10.0.0.1", IpAddresses.normalize(" 10.0.0.1 "));
+        assertEquals("10.0.0.1", IpAddresses.normalize("010.000.000.001"));
+        assertEquals("255.255.255.255", IpAddresses.normalize("255.255.255.255"));
+    }
+
+    @Test
+    void normalizesIpv6Literals() {
+        assertEquals("2001:db8:0:0:0:0:0:1", IpAddresses.normalize("2001:DB8::1"));
+        assertEquals("1.2.3.4", IpAddresses.normalize("::ffff:1.2.3.4"));
+    }
+
+    @Test
+    void rejectsOutOfRangeOctetsAndHostNames() {
+        assertThrows(IllegalArgumentException.class, () -> IpAddresses.normalize("999.1.1.1"));
+        assertThrows(IllegalArgumentException.class, () -> IpAddresses.normalize("1.1.1.256"));
+        assertThrows(IllegalArgumentException.class, () -> IpAddresses.normalize("localhost"));
+        assertThrows(IllegalArgumentException.class, () -> IpAddresses.normalize("zz:1"));
+        assertThrows(IllegalArgumentException.class, () -> IpAddresses.normalize(" "));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.practicum.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecentHitStoreTest {
+    private final HitDictionary hitDictionary = mock(HitDictionary.class);
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @BeforeEach
+    void setUp() {
+        when(hitDictionary.appName(anyInt())).thenAnswer(invocation -> "app" + invocation.getArgument(0));
+        when(hitDictionary.uriName(anyInt())).thenAnswer(invocation -> "/events/" + invocation.getArgument(0));
+    }
+
+    @Test
+    void coversNothingUntilTheWindowIsLoaded() {
+        RecentHitStore store = store(1000, 100);
+
+        assertFalse(store.covers(now));
+
+        store.afterSingletonsInstantiated();
+
+        assertTrue(store.covers(now.minusHours(5)));
+        assertFalse(store.covers(now.minusHours(7)));
+    }
+
+    @Test
+    void countsHitsAndUniqueIpsInTheRange() {
+        RecentHitStore store = loadedStore(1000, 100);
+        store.append(1, 1, "10.0.0.1", now.minusMinutes(30));
+        store.append(1, 1, "10.0.0.1", now.minusMinutes(20));
+        store.append(1, 1, "10.0.0.2", now.minusMinutes(10));
+        store.append(1, 2, "10.0.0.1", now.minusMinutes(10));
+        store.append(2, 2, "10.0.0.1", now.minusMinutes(10));
+
+        assertEquals(List.of(new ViewStats("app1", "/events/1", 3L)),
+                store.getStats(criteria(now.minusHours(1), List.of("/events/1"), null, false)));
+        assertEquals(List.of(new ViewStats("app1", "/events/1", 2L)),
+                store.getStats(criteria(now.minusHours(1), List.of("/events/1"), null, true)));
+        assertEquals(List.of(new ViewStats("app1", "/events/1", 1L)),
+                store.getStats(criteria(now.minusMinutes(15), List.of("/events/1"), "app1", false)));
+        assertEquals(List.of(new ViewStats("app2", "/events/2", 1L)),
+                store.getStats(criteria(now.minusHours(1), List.of("/events/2"), "app2", false)));
+    }
+
+    @Test
+    void evictsWholeChunksAtTheHitCapAndStopsCoveringThem() {
+        RecentHitStore store = loadedStore(4, 2);
+        for (int i = 0; i < 5; i++) {
+            store.append(1, 1, "10.0.0." + i, now.minusMinutes(50 - i * 10L));
+        }
+
+        assertEquals(3, store.size());
+        assertFalse(store.covers(now.minusMinutes(40)));
+        assertTrue(store.covers(now.minusMinutes(40).plusSeconds(1)));
+        assertEquals(List.of(new ViewStats("app1", "/events/1", 3L)),
+                store.getStats(criteria(now.minusMinutes(40).plusSeconds(1), List.of(), null, false)));
+    }
+
+    @Test
+    void ignoresHitsOlderThanWhatItCovers() {
+        RecentHitStore store = loadedStore(1000, 100);
+
+        store.append(1, 1, "10.0.0.1", now.minusHours(7));
+
+        assertEquals(0, store.size());
+    }
+
+    private RecentHitStore loadedStore(int maxHits, int chunkSize) {
+        RecentHitStore store = store(maxHits, chunkSize);
+        store.afterSingletonsInstantiated();
+        return store;
+    }
+
+    // The load runs through a mocked transaction template that does nothing, as for an empty table
+    private RecentHitStore store(int maxHits, int chunkSize) {
+        return new RecentHitStore(mock(NamedParameterJdbcTemplate.class), hitDictionary,
+                mock(TransactionTemplate.class), new SimpleMeterRegistry(), 6, maxHits, chunkSize);
+    }
+
+    private StatsCriteria criteria(LocalDateTime start, List<String> uris, String app, boolean unique) {
+        return new StatsCriteria(start, now, UriFilter.of(uris), app, unique, false);
+    }
+}
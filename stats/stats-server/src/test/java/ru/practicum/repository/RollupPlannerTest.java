@@ -0,0 +1,96 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.repository.RollupPlanner.Segment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollupPlannerTest {
+    private static final RetentionWatermarks COMPACTED = new RetentionWatermarks(
+            LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.MIN);
+
+    @Test
+    void planUsesCoarsestBucketsThatFit() {
+        List<Segment> segments = RollupPlanner.plan(
+                LocalDateTime.of(2024, 1, 1, 10, 15, 30), LocalDateTime.of(2024, 1, 3, 5, 0, 10));
+
+        assertEquals(List.of(
+                new Segment(Granularity.RAW, at(1, 10, 15, 30), at(1, 10, 16, 0), false),
+                new Segment(Granularity.MINUTE, at(1, 10, 16, 0), at(1, 11, 0, 0), false),
+                new Segment(Granularity.HOUR, at(1, 11, 0, 0), at(2, 0, 0, 0), false),
+                new Segment(Granularity.DAY, at(2, 0, 0, 0), at(3, 0, 0, 0), false),
+                new Segment(Granularity.HOUR, at(3, 0, 0, 0), at(3, 5, 0, 0), false),
+                new Segment(Granularity.RAW, at(3, 5, 0, 0), at(3, 5, 0, 10), true)), segments);
+    }
+
+    @Test
+    void planWithinOneMinuteReadsRawHits() {
+        List<Segment> segments = RollupPlanner.plan(at(1, 10, 15, 10), at(1, 10, 15, 50));
+
+        assertEquals(List.of(new Segment(Granularity.RAW, at(1, 10, 15, 10), at(1, 10, 15, 50), true)), segments);
+    }
+
+    @Test
+    void planFallsBackToCoarserTiersWhereFinerOnesWereCompacted() {
+        List<Segment> segments = RollupPlanner.plan(
+                at(10, 10, 30, 0), LocalDateTime.of(2024, 2, 1, 12, 0, 30), COMPACTED);
+
+        assertEquals(List.of(
+                new Segment(Granularity.HOUR, at(10, 10, 0, 0), at(11, 0, 0, 0), false),
+                new Segment(Granularity.DAY, at(11, 0, 0, 0), at(15, 0, 0, 0), false),
+                new Segment(Granularity.DAY, at(15, 0, 0, 0), LocalDateTime.of(2024, 2, 1, 0, 0), false),
+                new Segment(Granularity.HOUR, LocalDateTime.of(2024, 2, 1, 0, 0),
+                        LocalDateTime.of(2024, 2, 1, 12, 0), false),
+                new Segment(Granularity.RAW, LocalDateTime.of(2024, 2, 1, 12, 0),
+                        LocalDateTime.of(2024, 2, 1, 12, 0, 30), true)), segments);
+    }
+
+    @Test
+    void isExactOnlyWhenCompactedEdgesFallOnBucketBoundaries() {
+        LocalDateTime rawEnd = LocalDateTime.of(2024, 2, 1, 12, 0, 30);
+
+        assertTrue(RollupPlanner.isExact(at(10, 10, 0, 0), rawEnd, COMPACTED));
+        assertFalse(RollupPlanner.isExact(at(10, 10, 30, 0), rawEnd, COMPACTED));
+        assertTrue(RollupPlanner.isExact(at(10, 10, 0, 0), at(20, 23, 59, 59), COMPACTED));
+        assertFalse(RollupPlanner.isExact(at(10, 10, 0, 0), at(20, 12, 0, 0), COMPACTED));
+        assertTrue(RollupPlanner.isExact(at(10, 10, 30, 0), at(20, 12, 0, 0), RetentionWatermarks.NONE));
+    }
+
+    @Test
+    void partitionIntoOnePartKeepsThePlan() {
+        List<Segment> segments = RollupPlanner.plan(at(1, 10, 15, 30), at(3, 5, 0, 10));
+
+        assertEquals(List.of(segments), RollupPlanner.partition(segments, 1));
+    }
+
+    @Test
+    void partitionCutsDaySegmentsIntoContiguousGroups() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 3, 31, 0, 0);
+        List<Segment> segments = RollupPlanner.plan(start, end);
+
+        List<List<Segment>> groups = RollupPlanner.partition(segments, 3);
+
+        assertEquals(3, groups.size());
+        List<Segment> flattened = groups.stream().flatMap(List::stream).toList();
+        assertEquals(start, flattened.get(0).from());
+        assertEquals(end, flattened.get(flattened.size() - 1).to());
+        for (int i = 1; i < flattened.size(); i++) {
+            assertEquals(flattened.get(i - 1).to(), flattened.get(i).from());
+        }
+        for (List<Segment> group : groups) {
+            long days = group.stream().mapToLong(s -> Duration.between(s.from(), s.to()).toDays()).sum();
+            assertEquals(30, days);
+        }
+    }
+
+    private static LocalDateTime at(int day, int hour, int minute, int second) {
+        return LocalDateTime.of(2024, 1, day, hour, minute, second);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StatsRepositoryImplTest {
+    private static final RetentionWatermarks WATERMARKS = new RetentionWatermarks(
+            LocalDateTime.of(2024, 3, 1, 0, 0),
+            LocalDateTime.of(2024, 2, 1, 0, 0),
+            LocalDateTime.of(2024, 1, 1, 0, 0));
+    private static final LocalDateTime END = LocalDateTime.of(2024, 3, 10, 0, 0);
+
+    private final CompactionRepository compactionRepository = mock(CompactionRepository.class);
+    private final StatsRepositoryImpl repository = new StatsRepositoryImpl(mock(JdbcTemplate.class),
+            mock(NamedParameterJdbcTemplate.class), mock(HitRollupRepository.class), mock(HitSketchRepository.class),
+            mock(HitDictionary.class), mock(TransactionTemplate.class), Optional.empty(), mock(HitIdRegistry.class),
+            compactionRepository, mock(StatsQueryExecutor.class));
+
+    @BeforeEach
+    void setUp() {
+        when(compactionRepository.getWatermarks()).thenReturn(WATERMARKS);
+    }
+
+    @Test
+    void rejectsBucketsOfAPrunedRollup() {
+        StatsCriteria criteria = criteria(LocalDateTime.of(2024, 1, 15, 10, 30));
+
+        assertThrows(IllegalArgumentException.class, () -> repository.getBucketCounts(criteria, Granularity.MINUTE));
+        assertDoesNotThrow(() -> repository.getBucketCounts(criteria, Granularity.HOUR));
+        assertDoesNotThrow(() -> repository.getBucketCounts(criteria, Granularity.DAY));
+    }
+
+    @Test
+    void acceptsBucketsFromTheRollupWatermarkOn() {
+        assertDoesNotThrow(() -> repository.getBucketCounts(
+                criteria(LocalDateTime.of(2024, 2, 1, 0, 0)), Granularity.MINUTE));
+        assertThrows(IllegalArgumentException.class, () -> repository.getBucketCounts(
+                criteria(LocalDateTime.of(2023, 12, 31, 23, 0)), Granularity.HOUR));
+    }
+
+    @Test
+    void rawHitsCoverAnyGranularity() {
+        assertDoesNotThrow(() -> repository.getBucketCounts(
+                criteria(LocalDateTime.of(2024, 3, 2, 8, 15)), Granularity.MINUTE));
+    }
+
+    private static StatsCriteria criteria(LocalDateTime start) {
+        return new StatsCriteria(start, END, UriFilter.of(null), null, false, false);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UriFilterTest {
+
+    @Test
+    void noPatternsMatchEverything() {
+        assertSame(UriFilter.ALL, UriFilter.of(null));
+        assertSame(UriFilter.ALL, UriFilter.of(List.of()));
+        assertTrue(UriFilter.ALL.matches("/events/1"));
+        assertEquals("", UriFilter.ALL.textCondition(new MapSqlParameterSource()));
+    }
+
+    @Test
+    void splitsExactUrisFromPrefixes() {
+        UriFilter filter = UriFilter.of(List.of("/events", "/events/*"));
+
+        assertEquals(List.of("/events"), filter.uris());
+        assertEquals(List.of("/events/"), filter.prefixes());
+        assertTrue(filter.matches("/events"));
+        assertTrue(filter.matches("/events/42"));
+        assertFalse(filter.matches("/compilations/1"));
+    }
+
+    @Test
+    void exactFilterKeepsATrailingStar() {
+        UriFilter filter = UriFilter.exact(List.of("/events/*"));
+
+        assertEquals(List.of("/events/*"), filter.uris());
+        assertTrue(filter.prefixes().isEmpty());
+        assertTrue(filter.matches("/events/*"));
+        assertFalse(filter.matches("/events/42"));
+        assertSame(UriFilter.ALL, UriFilter.exact(null));
+    }
+
+    @Test
+    void exactUrisAreMatchedDirectly() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        String condition = UriFilter.of(List.of("/events/1", "/events/2")).textCondition(params);
+
+        assertEquals(" AND uri IN (:uris)", condition);
+        assertEquals(List.of("/events/1", "/events/2"), params.getValue("uris"));
+    }
+
+    @Test
+    void prefixesGoThroughTheDictionaryWithLikeEscaped() {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        String condition = UriFilter.of(List.of("/a_b%/*")).idCondition(params);
+
+        assertEquals(" AND uri_id IN (SELECT id FROM hit_uris WHERE (uri LIKE :uriPrefix0))", condition);
+        assertEquals("/a\\_b\\%/%", params.getValue("uriPrefix0"));
+    }
+}
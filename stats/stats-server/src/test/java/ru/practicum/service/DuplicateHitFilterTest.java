@@ -0,0 +1,126 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.EndpointHit;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateHitFilterTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private static final long WINDOW_SECONDS = 10;
+
+    private final MutableClock clock = new MutableClock(START.toInstant(ZoneOffset.UTC));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DuplicateHitFilter filter =
+            new DuplicateHitFilter(clock, meterRegistry, WINDOW_SECONDS, 1000, 0.001);
+
+    @Test
+    void onlyRecordedHitsAreRepeats() {
+        EndpointHit hit = hit("10.0.0.1", START);
+
+        assertFalse(filter.isRepeat(hit));
+        filter.record(List.of(hit));
+
+        assertTrue(filter.isRepeat(hit("10.0.0.1", START.plusSeconds(5))));
+        assertFalse(filter.isRepeat(hit("10.0.0.2", START.plusSeconds(5))));
+        assertEquals(1.0, meterRegistry.counter("stats.ingest.suppressed").count());
+    }
+
+    @Test
+    void generationsRotateWithTheServerClock() {
+        filter.record(List.of(hit("10.0.0.1", START)));
+
+        clock.advance(WINDOW_SECONDS);
+        assertTrue(filter.isRepeat(hit("10.0.0.1", START.plusSeconds(WINDOW_SECONDS))));
+
+        clock.advance(WINDOW_SECONDS);
+        assertFalse(filter.isRepeat(hit("10.0.0.1", START.plusSeconds(2 * WINDOW_SECONDS))));
+    }
+
+    @Test
+    void farFutureHitNeitherClearsTheFiltersNorIsRemembered() {
+        EndpointHit hit = hit("10.0.0.1", START);
+        EndpointHit future = hit("10.0.0.2", START.plusDays(1));
+        filter.record(List.of(hit));
+
+        assertFalse(filter.isRepeat(future));
+        filter.record(List.of(future));
+
+        assertTrue(filter.isRepeat(hit));
+        assertFalse(filter.isRepeat(future));
+    }
+
+    @Test
+    void hitSlightlyAheadOfTheServerClockCountsTowardsTheCurrentGeneration() {
+        filter.record(List.of(hit("10.0.0.1", START.plusSeconds(WINDOW_SECONDS + 5))));
+
+        assertTrue(filter.isRepeat(hit("10.0.0.1", START.plusSeconds(1))));
+    }
+
+    @Test
+    void hitsOlderThanThePreviousGenerationAreNotChecked() {
+        EndpointHit old = hit("10.0.0.1", START.minusSeconds(3 * WINDOW_SECONDS));
+        filter.record(List.of(old));
+
+        assertFalse(filter.isRepeat(old));
+    }
+
+    @Test
+    void filterDropsRepeatsWithinTheBatch() {
+        filter.record(List.of(hit("10.0.0.1", START)));
+
+        List<EndpointHit> accepted = filter.filter(List.of(
+                hit("10.0.0.1", START.plusSeconds(1)),
+                hit("10.0.0.2", START.plusSeconds(1)),
+                hit("10.0.0.2", START.plusSeconds(2))));
+
+        assertEquals(List.of("10.0.0.2"), accepted.stream().map(EndpointHit::getIp).toList());
+        assertEquals(2.0, meterRegistry.counter("stats.ingest.suppressed").count());
+    }
+
+    private static EndpointHit hit(String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri("/events/1")
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(long seconds) {
+            instant = instant.plusSeconds(seconds);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
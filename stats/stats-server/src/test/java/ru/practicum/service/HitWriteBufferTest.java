@@ -0,0 +1,147 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class HitWriteBufferTest {
+    private final StatsRepository statsRepository = mock(StatsRepository.class);
+    private final StatsResultCache resultCache = mock(StatsResultCache.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> stored = Collections.synchronizedList(new ArrayList<>());
+    private HitWriteBuffer buffer;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (buffer != null) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void enqueueModeAcksBeforeTheHitIsWritten() {
+        buffer = buffer(10, "enqueue");
+
+        CompletableFuture<Void> ack = buffer.submit(hit("/events/1"));
+
+        assertTrue(ack.isDone());
+        verify(statsRepository, times(0)).insertAll(anyList());
+    }
+
+    @Test
+    void flushModeAcksOnceTheBatchIsStoredAndCacheInvalidated() throws Exception {
+        recordInserts();
+        buffer = buffer(2, "flush");
+        CompletableFuture<Void> first = buffer.submit(hit("/events/1"));
+        CompletableFuture<Void> second = buffer.submit(hit("/events/2"));
+
+        buffer.start();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("/events/1", "/events/2"), stored);
+        verify(statsRepository, times(1)).insertAll(anyList());
+        verify(resultCache).invalidate(anyList());
+    }
+
+    @Test
+    void poisonedHitFailsAloneAndTheRestOfTheBatchIsStored() throws Exception {
+        recordInserts();
+        buffer = buffer(4, "flush");
+        List<CompletableFuture<Void>> acks = List.of(
+                buffer.submit(hit("/events/1")),
+                buffer.submit(hit("bad")),
+                buffer.submit(hit("/events/3")),
+                buffer.submit(hit("/events/4")));
+
+        buffer.start();
+
+        acks.get(0).get(5, TimeUnit.SECONDS);
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> acks.get(1).get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof DataIntegrityViolationException);
+        acks.get(2).get(5, TimeUnit.SECONDS);
+        acks.get(3).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("/events/1", "/events/3", "/events/4"), stored);
+        assertEquals(1.0, meterRegistry.counter("stats.ingest.dropped").count());
+        assertEquals(3.0, meterRegistry.counter("stats.ingest.flushed").count());
+    }
+
+    @Test
+    void unreachableDatabaseFailsTheWholeBatchWithoutSplitting() {
+        doAnswer(invocation -> {
+            throw new CannotGetJdbcConnectionException("connection refused");
+        }).when(statsRepository).insertAll(anyList());
+        buffer = buffer(3, "flush");
+        List<CompletableFuture<Void>> acks = List.of(
+                buffer.submit(hit("/events/1")),
+                buffer.submit(hit("/events/2")),
+                buffer.submit(hit("/events/3")));
+
+        buffer.start();
+
+        for (CompletableFuture<Void> ack : acks) {
+            assertThrows(ExecutionException.class, () -> ack.get(5, TimeUnit.SECONDS));
+        }
+        verify(statsRepository, times(1)).insertAll(anyList());
+        assertEquals(3.0, meterRegistry.counter("stats.ingest.dropped").count());
+    }
+
+    @Test
+    void fullBufferRejectsWithOverload() {
+        buffer = new HitWriteBuffer(statsRepository, Optional.of(resultCache), meterRegistry,
+                1, 10, 5000, "enqueue");
+        buffer.submit(hit("/events/1"));
+
+        assertThrows(IngestOverloadedException.class, () -> buffer.submit(hit("/events/2")));
+        assertEquals(1.0, meterRegistry.counter("stats.ingest.dropped").count());
+    }
+
+    // Hits are queued before start(), so the first flush takes exactly flushSize of them
+    private HitWriteBuffer buffer(int flushSize, String ack) {
+        return new HitWriteBuffer(statsRepository, Optional.of(resultCache), meterRegistry,
+                100, flushSize, 50, ack);
+    }
+
+    private void recordInserts() {
+        doAnswer(invocation -> {
+            List<EndpointHit> hits = invocation.getArgument(0);
+            if (hits.stream().anyMatch(hit -> hit.getUri().equals("bad"))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            hits.forEach(hit -> stored.add(hit.getUri()));
+            return null;
+        }).when(statsRepository).insertAll(anyList());
+    }
+
+    private static EndpointHit hit(String uri) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(LocalDateTime.of(2024, 5, 1, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.Granularity;
+import ru.practicum.repository.HitPartitionRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PartitionMaintenanceJobTest {
+    private final HitPartitionRepository partitionRepository = mock(HitPartitionRepository.class);
+    private final CompactionRepository compactionRepository = mock(CompactionRepository.class);
+
+    @Test
+    void movesTheRawWatermarkBeforeDroppingExpiredPartitions() {
+        when(partitionRepository.findPartitions())
+                .thenReturn(List.of("endpoint_hits_p202001", "endpoint_hits_default"));
+        PartitionMaintenanceJob job = new PartitionMaintenanceJob(partitionRepository, compactionRepository,
+                "MONTH", 0, 30);
+
+        job.maintain();
+
+        InOrder order = inOrder(compactionRepository, partitionRepository);
+        order.verify(compactionRepository).advance(Granularity.RAW, LocalDate.now().minusDays(30).atStartOfDay());
+        order.verify(compactionRepository).refreshWatermarks();
+        order.verify(partitionRepository).dropPartition("endpoint_hits_p202001");
+        order.verify(partitionRepository).deleteFromDefaultBefore(LocalDate.now().minusDays(30).atStartOfDay());
+    }
+
+    @Test
+    void leavesTheWatermarkAloneWithoutRetention() {
+        PartitionMaintenanceJob job = new PartitionMaintenanceJob(partitionRepository, compactionRepository,
+                "MONTH", 0, 0);
+
+        job.maintain();
+
+        verify(compactionRepository, never()).advance(any(), any());
+        verify(partitionRepository, never()).dropPartition(anyString());
+    }
+}
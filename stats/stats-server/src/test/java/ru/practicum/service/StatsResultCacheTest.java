@@ -0,0 +1,38 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.service.StatsResultCache.Bucket;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsResultCacheTest {
+
+    @Test
+    void bucketsUseWholeMonthsWhereTheyFit() {
+        List<Bucket> buckets = StatsResultCache.buckets(LocalDate.of(2024, 1, 30), LocalDate.of(2024, 4, 2));
+
+        assertEquals(List.of(
+                new Bucket(LocalDate.of(2024, 1, 30), false),
+                new Bucket(LocalDate.of(2024, 1, 31), false),
+                new Bucket(LocalDate.of(2024, 2, 1), true),
+                new Bucket(LocalDate.of(2024, 3, 1), true),
+                new Bucket(LocalDate.of(2024, 4, 1), false)), buckets);
+    }
+
+    @Test
+    void bucketsWithinAMonthAreDays() {
+        List<Bucket> buckets = StatsResultCache.buckets(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 3));
+
+        assertEquals(List.of(
+                new Bucket(LocalDate.of(2024, 2, 1), false),
+                new Bucket(LocalDate.of(2024, 2, 2), false)), buckets);
+    }
+
+    @Test
+    void emptyRangeHasNoBuckets() {
+        assertEquals(List.of(), StatsResultCache.buckets(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 1)));
+    }
+}
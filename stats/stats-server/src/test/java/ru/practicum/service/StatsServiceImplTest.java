@@ -0,0 +1,77 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.repository.StatsCriteria;
+import ru.practicum.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class StatsServiceImplTest {
+    private final StatsRepository statsRepository = mock(StatsRepository.class);
+    private final HitWriteBuffer writeBuffer = mock(HitWriteBuffer.class);
+    private final StatsServiceImpl statsService = new StatsServiceImpl(statsRepository, Optional.of(writeBuffer),
+            Optional.empty(), Optional.empty());
+
+    @Test
+    void rejectsHitsWithoutAppUriOrTimestampBeforeBuffering() {
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHit(hit(null, "/events/1", noon())));
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHit(hit(" ", "/events/1", noon())));
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHit(hit("ewm", null, noon())));
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHit(hit("ewm", "", noon())));
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHit(hit("ewm", "/events/1", null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> statsService.saveHit(hit("ewm", "/" + "x".repeat(200), noon())));
+
+        verify(writeBuffer, never()).submit(any());
+    }
+
+    @Test
+    void rejectsTheWholeBatchWhenOneHitIsInvalid() {
+        List<EndpointHit> hits = List.of(hit("ewm", "/events/1", noon()), hit("ewm", "/events/2", null));
+
+        assertThrows(IllegalArgumentException.class, () -> statsService.saveHits(hits));
+
+        verify(statsRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    void getStatsMatchesUrisExactlyAndQueryStatsExpandsPrefixes() {
+        ArgumentCaptor<StatsCriteria> criteria = ArgumentCaptor.forClass(StatsCriteria.class);
+        List<String> uris = List.of("/events/1", "/events/*");
+
+        statsService.getStats(noon(), noon().plusDays(1), uris, false, false);
+        statsService.queryStats(noon(), noon().plusDays(1), uris, false, false);
+
+        verify(statsRepository, times(2)).getStats(criteria.capture());
+        assertEquals(uris, criteria.getAllValues().get(0).uris().uris());
+        assertEquals(List.of(), criteria.getAllValues().get(0).uris().prefixes());
+        assertEquals(List.of("/events/1"), criteria.getAllValues().get(1).uris().uris());
+        assertEquals(List.of("/events/"), criteria.getAllValues().get(1).uris().prefixes());
+    }
+
+    private static LocalDateTime noon() {
+        return LocalDateTime.of(2024, 5, 1, 12, 0);
+    }
+
+    private static EndpointHit hit(String app, String uri, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app(app)
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void smallCardinalityIsExact() {
+        HyperLogLog sketch = sketchOf(0, 100);
+
+        assertEquals(100, sketch.estimate());
+    }
+
+    @Test
+    void repeatedValuesCountOnce() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("10.0.0.1");
+        }
+
+        assertEquals(1, sketch.estimate());
+    }
+
+    @Test
+    void largeCardinalityIsWithinErrorBound() {
+        HyperLogLog sketch = sketchOf(0, 100_000);
+
+        // Standard error at precision 12 is about 1.6%, so 5% is over three standard errors
+        assertWithin(100_000, sketch.estimate(), 0.05);
+    }
+
+    @Test
+    void mergeEstimatesTheUnion() {
+        HyperLogLog merged = sketchOf(0, 50_000).merge(sketchOf(25_000, 75_000));
+
+        assertEquals(sketchOf(0, 75_000).estimate(), merged.estimate());
+    }
+
+    @Test
+    void mergeWithLowerPrecisionFoldsToIt() {
+        HyperLogLog merged = sketchOf(0, 20_000).merge(sketchOf(10_000, 30_000, 10));
+
+        assertEquals(10, merged.getPrecision());
+        assertWithin(30_000, merged.estimate(), 0.10);
+    }
+
+    @Test
+    void sparseSketchSurvivesSerialization() {
+        HyperLogLog sketch = sketchOf(0, 50);
+        byte[] bytes = sketch.toBytes();
+
+        assertTrue(bytes.length < 1 << 12);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertEquals(sketch.estimate(), restored.estimate());
+        assertArrayEquals(bytes, restored.toBytes());
+    }
+
+    @Test
+    void denseSketchSurvivesSerialization() {
+        HyperLogLog sketch = sketchOf(0, 100_000);
+        byte[] bytes = sketch.toBytes();
+
+        assertEquals(2 + (1 << 12), bytes.length);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertEquals(sketch.estimate(), restored.estimate());
+        assertArrayEquals(bytes, restored.toBytes());
+    }
+
+    @Test
+    void rejectsPrecisionOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MIN_PRECISION - 1));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+
+    private static HyperLogLog sketchOf(int from, int to) {
+        return sketchOf(from, to, 12);
+    }
+
+    private static HyperLogLog sketchOf(int from, int to, int precision) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i = from; i < to; i++) {
+            sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+        }
+        return sketch;
+    }
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        assertTrue(Math.abs(actual - expected) <= expected * tolerance,
+                () -> "estimate " + actual + " is not within " + tolerance + " of " + expected);
+    }
+}